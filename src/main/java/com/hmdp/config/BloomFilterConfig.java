@@ -0,0 +1,89 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.cache.CacheMetrics;
+import com.hmdp.utils.cache.RedisBloomFilter;
+import com.hmdp.utils.constant.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+@Slf4j
+@Configuration
+public class BloomFilterConfig {
+    //启动时按id分批加载的数量
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(StringRedisTemplate stringRedisTemplate,
+                                            RedisMessageListenerContainer redisMessageListenerContainer,
+                                            CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        CacheProperties.Bloom bloom = cacheProperties.getBloom();
+        RedisBloomFilter filter = new RedisBloomFilter(stringRedisTemplate, redisMessageListenerContainer, "shop",
+                bloom.getShop().getExpectedInsertions(), bloom.getShop().getFpp(), bloom.isLocalCopy());
+        cacheMetrics.bindBloomFilter(filter);
+        return filter;
+    }
+
+    @Bean
+    public RedisBloomFilter blogBloomFilter(StringRedisTemplate stringRedisTemplate,
+                                            RedisMessageListenerContainer redisMessageListenerContainer,
+                                            CacheProperties cacheProperties, CacheMetrics cacheMetrics) {
+        CacheProperties.Bloom bloom = cacheProperties.getBloom();
+        RedisBloomFilter filter = new RedisBloomFilter(stringRedisTemplate, redisMessageListenerContainer, "blog",
+                bloom.getBlog().getExpectedInsertions(), bloom.getBlog().getFpp(), bloom.isLocalCopy());
+        cacheMetrics.bindBloomFilter(filter);
+        return filter;
+    }
+
+    /**
+     * 启动时从数据库加载全部id写入布隆过滤器，加载完成后过滤器才开始拦截
+     */
+    @Bean
+    public ApplicationRunner bloomFilterInitializer(CacheProperties cacheProperties, CacheClient cacheClient,
+                                                    IShopService shopService, IBlogService blogService,
+                                                    RedisBloomFilter shopBloomFilter, RedisBloomFilter blogBloomFilter) {
+        return args -> {
+            CacheProperties.Bloom bloom = cacheProperties.getBloom();
+            if (!bloom.isEnabled()) {
+                return;
+            }
+            cacheClient.registerExistenceFilter(RedisConstants.CACHE_SHOP_KEY, shopBloomFilter);
+            cacheClient.registerExistenceFilter(RedisConstants.CACHE_BLOG_KEY, blogBloomFilter);
+
+            loadIds(shopService, shopBloomFilter);
+            shopBloomFilter.markReady(bloom.getLocalSyncIntervalSeconds());
+            loadIds(blogService, blogBloomFilter);
+            blogBloomFilter.markReady(bloom.getLocalSyncIntervalSeconds());
+        };
+    }
+
+    /**
+     * 按id分批（keyset分页）读取表中全部id并写入过滤器
+     */
+    private <T> void loadIds(IService<T> service, RedisBloomFilter filter) {
+        long lastId = 0L;
+        long total = 0L;
+        while (true) {
+            List<Long> ids = service.listObjs(
+                    Wrappers.<T>query().select("id").gt("id", lastId).orderByAsc("id").last("LIMIT " + LOAD_BATCH_SIZE),
+                    id -> Long.valueOf(id.toString()));
+            if (ids.isEmpty()) {
+                break;
+            }
+            filter.putAll(ids);
+            total += ids.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+        log.info("布隆过滤器[{}]加载完成，共{}条", filter.getName(), total);
+    }
+}
@@ -0,0 +1,308 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存相关配置，对应配置文件中 hmdp.cache 前缀
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 本地一级缓存配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 布隆过滤器配置
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 缓存序列化格式配置
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * 逻辑过期缓存的提前刷新配置
+     */
+    private EarlyRefresh earlyRefresh = new EarlyRefresh();
+
+    /**
+     * 缓存预热配置
+     */
+    private Warmup warmup = new Warmup();
+
+    /**
+     * 热点key探测配置
+     */
+    private HotKey hotKey = new HotKey();
+
+    /**
+     * 后台缓存重建配置
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 过期时间策略配置
+     */
+    private Ttl ttl = new Ttl();
+
+    /**
+     * 空值缓存配置
+     */
+    private Negative negative = new Negative();
+
+    /**
+     * 店铺哈希缓存配置
+     */
+    private ShopHash shopHash = new ShopHash();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启本地一级缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本地缓存最大权重（按缓存值序列化后的字节数计算）
+         */
+        private long maximumWeight = 32L * 1024 * 1024;
+
+        /**
+         * 本地缓存写入后的最长存活时间（秒），作为失效广播丢失时的兜底
+         */
+        private long expireAfterWriteSeconds = 60L;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否开启布隆过滤器
+         */
+        private boolean enabled = true;
+
+        /**
+         * 是否在本地保存位图副本
+         */
+        private boolean localCopy = true;
+
+        /**
+         * 本地副本从Redis全量刷新的间隔（秒）
+         */
+        private long localSyncIntervalSeconds = 300L;
+
+        /**
+         * 店铺id过滤器
+         */
+        private FilterSpec shop = new FilterSpec();
+
+        /**
+         * 博客id过滤器
+         */
+        private FilterSpec blog = new FilterSpec();
+    }
+
+    @Data
+    public static class FilterSpec {
+        /**
+         * 预计元素数量
+         */
+        private long expectedInsertions = 100000L;
+
+        /**
+         * 期望误判率
+         */
+        private double fpp = 0.01;
+    }
+
+    @Data
+    public static class Codec {
+        /**
+         * 写入格式：json（与旧版本兼容）或binary
+         */
+        private String format = "json";
+
+        /**
+         * binary格式使用的编解码器名称
+         */
+        private String binaryCodec = "smile";
+
+        /**
+         * binary格式下读到旧的json格式数据时，是否顺带重写为binary格式
+         */
+        private boolean migrateOnRead = true;
+
+        /**
+         * binary格式下编码后超过该字节数的数据使用Deflate压缩，0表示不压缩
+         */
+        private int compressThreshold = 1024;
+
+        /**
+         * Deflate压缩级别，1~9，越大压缩率越高、CPU开销越大
+         */
+        private int compressLevel = 1;
+    }
+
+    @Data
+    public static class EarlyRefresh {
+        /**
+         * 是否开启提前刷新，关闭后只在逻辑过期后重建
+         */
+        private boolean enabled = true;
+
+        /**
+         * 提前刷新的激进程度，越大越早刷新，1.0为理论最优值
+         */
+        private double beta = 1.0;
+    }
+
+    @Data
+    public static class Warmup {
+        /**
+         * 是否在启动时预热，预热完成前实例不接收流量
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每批从数据库读取的行数，同时也是一次管道写入的key数量
+         */
+        private int batchSize = 500;
+
+        /**
+         * 并行序列化、写入Redis的线程数，同时也是内存中最多积压的批数
+         */
+        private int concurrency = 4;
+    }
+
+    @Data
+    public static class HotKey {
+        /**
+         * 是否开启热点key探测，热点key会被复制到本地短期缓存中
+         */
+        private boolean enabled = true;
+
+        /**
+         * 采样率，只有被采样的读请求才计数
+         */
+        private double sampleRate = 0.1;
+
+        /**
+         * 滑动窗口长度（秒）
+         */
+        private int windowSeconds = 10;
+
+        /**
+         * 滑动窗口切分的格数，每过 windowSeconds / windowSlots 秒淘汰最旧的一格
+         */
+        private int windowSlots = 5;
+
+        /**
+         * 窗口内（按采样率折算后的）访问次数达到该值即判定为热点，降到一半以下时取消
+         */
+        private long threshold = 500L;
+
+        /**
+         * 最多同时保留的热点key数量
+         */
+        private int maxHotKeys = 100;
+
+        /**
+         * 热点key本地副本的存活时间（秒）
+         */
+        private long localTtlSeconds = 5L;
+    }
+
+    @Data
+    public static class Rebuild {
+        /**
+         * 重建线程数
+         */
+        private int threads = 10;
+
+        /**
+         * 最多排队的重建任务数，超出时丢弃重建、继续返回旧数据
+         */
+        private int queueCapacity = 1000;
+    }
+
+    @Data
+    public static class Negative {
+        /**
+         * 是否使用位图保存数字id的空值缓存，关闭时每个id单独写入一个空字符串key
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每个位图覆盖的id数量，单个位图最大占用 rangeBits / 8 字节
+         */
+        private int rangeBits = 65536;
+    }
+
+    @Data
+    public static class ShopHash {
+        /**
+         * 店铺详情是否从哈希缓存读取，关闭时仍使用逻辑过期的JSON缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 计数器增量写回数据库的间隔（秒）
+         */
+        private long flushIntervalSeconds = 5L;
+
+        /**
+         * 每条UPDATE语句写回的店铺数
+         */
+        private int flushBatchSize = 500;
+    }
+
+    @Data
+    public static class Ttl {
+        /**
+         * 未匹配到任何key前缀时使用的策略
+         */
+        private TtlSpec defaultPolicy = new TtlSpec();
+
+        /**
+         * 按key前缀配置的策略，名称 -> 策略，前缀重叠时取最长的前缀
+         */
+        private Map<String, TtlSpec> policies = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class TtlSpec {
+        /**
+         * 适用的key前缀
+         */
+        private String prefix;
+
+        /**
+         * 基础过期时间（秒），0表示使用调用方传入的过期时间
+         */
+        private long baseSeconds = 0L;
+
+        /**
+         * 随机抖动比例，实际过期时间在 [基础, 基础 * (1 + 抖动比例)] 内均匀分布，避免同时写入的key同时过期
+         */
+        private double jitterRatio = 0.1;
+
+        /**
+         * 热点key的过期时间延长比例，如1.0表示延长一倍
+         */
+        private double hotExtensionRatio = 1.0;
+
+        /**
+         * 空值缓存的过期时间（秒）
+         */
+        private long nullTtlSeconds = 2L;
+    }
+}
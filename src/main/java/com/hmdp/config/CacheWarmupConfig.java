@@ -0,0 +1,32 @@
+package com.hmdp.config;
+
+import com.hmdp.service.ICacheWarmupService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Slf4j
+@Configuration
+public class CacheWarmupConfig {
+
+    /**
+     * 启动时预热缓存
+     * ApplicationRunner全部执行完后Spring Boot才会把就绪状态切换为ACCEPTING_TRAFFIC，
+     * 因此预热完成前实例的就绪探针不会通过，不会有流量打到冷缓存上
+     */
+    @Bean
+    public ApplicationRunner cacheWarmupRunner(CacheProperties cacheProperties, ICacheWarmupService cacheWarmupService) {
+        return args -> {
+            if (!cacheProperties.getWarmup().isEnabled()) {
+                return;
+            }
+            try {
+                cacheWarmupService.warmup();
+            } catch (Exception e) {
+                //预热失败不影响启动，未预热的数据在首次访问时懒加载
+                log.error("缓存预热失败", e);
+            }
+        };
+    }
+}
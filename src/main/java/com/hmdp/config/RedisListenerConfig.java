@@ -0,0 +1,30 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.cache.LocalCache;
+import com.hmdp.utils.constant.RedisConstants;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory redisConnectionFactory, LocalCache localCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+
+        //本地缓存失效广播
+        if (localCache.isEnabled()) {
+            container.addMessageListener(
+                    (message, pattern) -> localCache.onInvalidateMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+        }
+        return container;
+    }
+}
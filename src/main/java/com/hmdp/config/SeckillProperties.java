@@ -0,0 +1,83 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀相关配置，对应配置文件中 hmdp.seckill 前缀
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 新建秒杀券的库存分片数，大于1时库存和一人一单记录拆分到多个分片，用户按id哈希落在一个分片上；
+     * 分片数在创建时写入秒杀券元数据，修改配置不影响已创建的秒杀券
+     */
+    private int stockShards = 1;
+
+    /**
+     * 本地售罄标记的过期时间（秒），过期后重新由下单脚本判断
+     */
+    private long soldOutTtlSeconds = 60;
+
+    /**
+     * 下单消息消费者配置
+     */
+    private Consumer consumer = new Consumer();
+
+    @Data
+    public static class Consumer {
+        /**
+         * 消费者组名
+         */
+        private String group = "g1";
+
+        /**
+         * 实例标识，消费者名为 {实例标识}-{线程序号}；未配置时使用 主机名:进程号，保证各实例的消费者名不重复
+         */
+        private String instanceId;
+
+        /**
+         * 每个实例的消费线程数，每个线程是组内一个独立的消费者
+         */
+        private int workers = 4;
+
+        /**
+         * 停机时等待消费线程处理完当前批次的最长时间（毫秒）
+         */
+        private long shutdownTimeoutMillis = 10000;
+
+        /**
+         * 每批最多处理的消息数，同一批订单一次写入数据库、一次确认
+         */
+        private int batchSize = 100;
+
+        /**
+         * 读到第一条消息后最多再等待的时间（毫秒），期间凑够batchSize条立即处理；为0时不等待
+         */
+        private long batchWaitMillis = 50;
+
+        /**
+         * 没有消息时每次阻塞读取的时间（毫秒）
+         */
+        private long idleBlockMillis = 2000;
+
+        /**
+         * 恢复任务扫描pending队列的间隔（毫秒）
+         */
+        private long recoveryIntervalMillis = 5000;
+
+        /**
+         * 消息空闲超过该时间（毫秒）未确认时由恢复任务认领，需大于一批消息的正常处理时间
+         */
+        private long claimIdleMillis = 60000;
+
+        /**
+         * 每条消息的最大投递次数，投递该次数仍未处理成功时转入死信队列
+         */
+        private int maxDeliveries = 5;
+    }
+}
@@ -0,0 +1,59 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.ICacheWarmupService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.cache.HotKeyDetector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存运维接口
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private ICacheWarmupService cacheWarmupService;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    /**
+     * 查询当前的热点key
+     * @return key -> 滑动窗口内估算访问次数，按访问次数从高到低排列
+     */
+    @GetMapping("/hot-keys")
+    public Result queryHotKeys() {
+        return Result.ok(hotKeyDetector.getHotKeys());
+    }
+
+    /**
+     * 手动触发缓存全量预热，如Redis故障恢复、清空后
+     * @return 各类数据的预热数量与耗时
+     */
+    @PostMapping("/warmup")
+    public Result warmup() {
+        return cacheWarmupService.warmup();
+    }
+
+    /**
+     * 店铺类型在数据库中修改后调用，各实例重新加载店铺类型快照
+     */
+    @PostMapping("/shop-types/refresh")
+    public Result refreshShopTypes() {
+        shopTypeService.refreshTypeList();
+        return Result.ok();
+    }
+}
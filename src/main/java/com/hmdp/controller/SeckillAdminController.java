@@ -0,0 +1,36 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IVoucherService;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 秒杀运维接口，需登录后访问
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/seckill")
+public class SeckillAdminController {
+
+    @Resource
+    private IVoucherService voucherService;
+
+    /**
+     * 补充秒杀券库存，已售罄的券恢复销售
+     * @param voucherId 优惠券id
+     * @param amount 补充的数量
+     * @return
+     */
+    @PutMapping("/vouchers/{id}/stock")
+    public Result replenishSeckillStock(@PathVariable("id") Long voucherId, @RequestParam("amount") Integer amount) {
+        return voucherService.replenishSeckillStock(voucherId, amount);
+    }
+}
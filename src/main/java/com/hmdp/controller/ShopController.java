@@ -5,11 +5,13 @@ import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopHashService;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.constant.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -26,6 +28,9 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private IShopHashService shopHashService;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -36,6 +41,33 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 根据id批量查询商铺信息
+     * @param ids 商铺id，以逗号分隔
+     * @return 商铺列表，按id顺序排列，不存在的商铺不返回
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        return shopService.queryByIds(ids);
+    }
+
+    /**
+     * 根据id查询商铺的部分字段，如 sold,comments,score
+     * @param id 商铺id
+     * @param fields 字段名，为空时返回全部字段
+     * @return 只包含指定字段和id的商铺信息
+     */
+    @GetMapping("/{id}/fields")
+    public Result queryShopFields(@PathVariable("id") Long id,
+                                  @RequestParam(value = "fields", required = false) String[] fields) {
+        try {
+            Shop shop = shopHashService.queryShop(id, fields == null ? new String[0] : fields);
+            return shop == null ? Result.fail("无对应店铺信息！") : Result.ok(shop);
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -43,10 +75,7 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -2,14 +2,16 @@ package com.hmdp.controller;
 
 
 import com.hmdp.dto.Result;
-import com.hmdp.entity.ShopType;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.service.IShopTypeService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,8 +27,21 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询店铺类型列表，直接返回快照中预先序列化好的响应体
+     * 响应带强校验的ETag，请求头If-None-Match与之一致时由Spring MVC返回304，不再发送响应体
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-        return typeService.queryTypeList();
+    public ResponseEntity<?> queryTypeList() {
+        ShopTypeSnapshot snapshot = typeService.getSnapshot();
+        if (snapshot == null) {
+            return ResponseEntity.ok(Result.fail("查询店铺类型失败！"));
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getETag())
+                //客户端可以缓存，但每次使用前都需要用ETag校验
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody());
     }
 }
@@ -0,0 +1,13 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 单个店铺待写回数据库的计数器增量
+ */
+@Data
+public class ShopCounterDelta {
+    private Long shopId;
+    private long sold;
+    private long comments;
+}
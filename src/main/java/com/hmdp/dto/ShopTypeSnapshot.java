@@ -0,0 +1,35 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 店铺类型列表的进程内快照，创建后不再修改
+ * body为 Result.ok(types) 序列化后的JSON，直接写入响应，不再逐次序列化；
+ * eTag为body的摘要（强校验），内容相同的快照在各实例上得到相同的eTag
+ */
+@Getter
+public class ShopTypeSnapshot {
+    /**
+     * 快照对应的版本号，与Redis中的版本号比较以判断是否需要刷新
+     */
+    private final long version;
+
+    private final List<ShopType> types;
+
+    /**
+     * 响应体，调用方不能修改
+     */
+    private final byte[] body;
+
+    private final String eTag;
+
+    public ShopTypeSnapshot(long version, List<ShopType> types, byte[] body, String eTag) {
+        this.version = version;
+        this.types = types;
+        this.body = body;
+        this.eTag = eTag;
+    }
+}
@@ -1,7 +1,11 @@
 package com.hmdp.mapper;
 
+import com.hmdp.dto.ShopCounterDelta;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface ShopMapper extends BaseMapper<Shop> {
 
+    /**
+     * 批量累加店铺的销量、评论数
+     * @param deltas 各店铺的增量
+     * @param gen 写回批次号，已累加过该批次（counter_flush_gen不小于批次号）的店铺跳过；为null时不校验
+     * @return 更新的行数
+     */
+    int incrementCounters(@Param("deltas") List<ShopCounterDelta> deltas, @Param("gen") Long gen);
 }
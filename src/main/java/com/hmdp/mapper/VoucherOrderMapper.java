@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 批量写入订单，一条多行INSERT ... ON DUPLICATE KEY UPDATE语句，跳过订单id或(用户id, 优惠券id)重复的订单
+     * @param orders 订单，只写入id、用户id、优惠券id
+     * @return 实际写入的行数，依赖连接参数useAffectedRows=true，否则重复的订单也会计入
+     */
+    int insertBatchSkipDuplicates(@Param("orders") List<VoucherOrder> orders);
 }
@@ -16,6 +16,14 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogById(Long blogId);
 
+    /**
+     * 查询博客及作者信息（带缓存），不含当前用户的点赞状态
+     * 返回的对象可能来自本地缓存，调用方不能修改
+     * @param blogId
+     * @return 博客不存在时返回null
+     */
+    Blog queryBlogWithAuthor(Long blogId);
+
     Result queryHotBlog(Integer current);
 
     Result likeBlog(Long id);
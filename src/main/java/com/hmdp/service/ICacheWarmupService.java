@@ -0,0 +1,17 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+
+/**
+ * <p>
+ *  缓存预热服务类
+ * </p>
+ */
+public interface ICacheWarmupService {
+
+    /**
+     * 将店铺、店铺类型、秒杀库存全量写入Redis
+     * @return 各类数据的预热数量与耗时
+     */
+    Result warmup();
+}
@@ -0,0 +1,47 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.Shop;
+
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ *  店铺哈希缓存服务类
+ *  店铺以Redis哈希保存，每个字段单独读写：静态字段在加载时写入，销量、评论数等计数器用HINCRBY原子自增，
+ *  计数器增量定期批量写回数据库，计数器的高频变化不再使店铺缓存失效
+ * </p>
+ */
+public interface IShopHashService {
+
+    /**
+     * 按字段查询店铺，缓存不存在时从数据库加载
+     * 返回的对象只填充了指定字段和id
+     * @param shopId 店铺id
+     * @param fields 需要的字段，为空时返回全部字段
+     * @return 店铺不存在时返回null
+     */
+    Shop queryShop(Long shopId, String... fields);
+
+    /**
+     * 计数器自增，增量累计后定期写回数据库；未开启店铺哈希缓存时直接写入数据库
+     * @param shopId 店铺id
+     * @param field 计数器字段：sold 或 comments
+     * @param delta 增量，可以为负数
+     * @return 自增后缓存中的值，缓存不存在或未开启店铺哈希缓存时返回null
+     */
+    Long incrementCounter(Long shopId, String field, long delta);
+
+    /**
+     * 删除店铺哈希缓存，店铺静态信息修改后调用，未写回的计数器增量不受影响
+     * 缓存中保留修改后的更新时间，修改前开始的加载读到旧数据时不再写入缓存
+     * @param shopId 店铺id
+     * @param updateTime 修改后数据库中的更新时间，店铺已删除时为null
+     */
+    void evict(Long shopId, LocalDateTime updateTime);
+
+    /**
+     * 将累计的计数器增量写回数据库
+     * @return 写回的店铺数
+     */
+    int flushCounters();
+}
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,6 +18,10 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result queryByIds(List<Long> ids);
+
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 
     Result queryShopByType(Integer typeId, Integer current, Double latitude, Double longitude);
@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -15,4 +16,20 @@ import com.baomidou.mybatisplus.extension.service.IService;
 public interface IShopTypeService extends IService<ShopType> {
 
     Result queryTypeList();
+
+    /**
+     * 获取店铺类型列表的进程内快照
+     * @return 快照，数据库中没有店铺类型时返回null
+     */
+    ShopTypeSnapshot getSnapshot();
+
+    /**
+     * 店铺类型变更后调用：删除Redis中的列表并广播新版本号，各实例重新加载快照
+     */
+    void refreshTypeList();
+
+    /**
+     * Redis中的列表已被改写时调用：版本号加一并广播，各实例重新加载快照
+     */
+    void publishTypeListChange();
 }
@@ -13,4 +13,11 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IUserInfoService extends IService<UserInfo> {
 
+    /**
+     * 查询用户详情（带缓存），不含创建、更新时间
+     * 返回的对象可能来自本地缓存，调用方不能修改
+     * @param userId
+     * @return 用户没有详情时返回null
+     */
+    UserInfo queryUserInfo(Long userId);
 }
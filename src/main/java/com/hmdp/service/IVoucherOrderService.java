@@ -5,6 +5,8 @@ import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -17,5 +19,11 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result placeVoucherOrder(Long voucherId);
 
+    /**
+     * 在一个事务中批量保存秒杀订单，并按优惠券合并扣减数据库库存
+     * @param orders 下单消息解析出的订单
+     */
+    void createVoucherOrders(List<VoucherOrder> orders);
+
     //public Result createVoucherOrder(Long voucherId, Long userId, SeckillVoucher voucher);
 }
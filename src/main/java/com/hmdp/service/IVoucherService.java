@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +18,27 @@ public interface IVoucherService extends IService<Voucher> {
 
     Result queryVoucherOfShop(Long shopId);
 
+    /**
+     * 查询店铺的优惠券列表（带缓存），秒杀券的库存可能有短暂延迟
+     * 返回的列表可能来自本地缓存，调用方不能修改
+     * @param shopId
+     * @return
+     */
+    List<Voucher> queryVoucherListOfShop(Long shopId);
+
+    /**
+     * 新增普通券
+     * @param voucher
+     */
+    void addVoucher(Voucher voucher);
+
     void addSeckillVoucher(Voucher voucher);
+
+    /**
+     * 补充秒杀券库存，同时更新数据库和Redis中的库存，并清除各节点的售罄标记
+     * @param voucherId 优惠券id
+     * @param amount 补充的数量
+     * @return
+     */
+    Result replenishSeckillStock(Long voucherId, Integer amount);
 }
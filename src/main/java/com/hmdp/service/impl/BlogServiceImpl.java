@@ -14,10 +14,16 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
+import com.hmdp.service.IShopHashService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.cache.CacheEvict;
+import com.hmdp.utils.cache.CacheStrategy;
+import com.hmdp.utils.cache.Cached;
+import com.hmdp.utils.cache.ExistenceFilter;
 import com.hmdp.utils.constant.RedisConstants;
 import com.hmdp.utils.constant.SystemConstants;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
@@ -51,14 +57,38 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private ExistenceFilter blogBloomFilter;
+
+    @Resource
+    private IShopHashService shopHashService;
+
     @Override
     public Result queryBlogById(Long blogId) {
-        //查询博客信息
+        //查询博客及作者信息，布隆过滤器拦截、空值缓存由缓存层处理
+        IBlogService proxy = (IBlogService) AopContext.currentProxy();
+        Blog cached = proxy.queryBlogWithAuthor(blogId);
+        if(cached == null){
+            return Result.fail("笔记不存在！");
+        }
+        //缓存中的对象是共享的，复制后再附加当前用户的点赞状态
+        Blog blog = BeanUtil.copyProperties(cached, Blog.class);
+        blog.setIsLike(getCurrentUserLikedStatus(blog.getId()));
+        return Result.ok(blog);
+    }
+
+    @Override
+    @Cached(prefix = RedisConstants.CACHE_BLOG_KEY, key = "#blogId",
+            strategy = CacheStrategy.STALE_WHILE_REVALIDATE,
+            ttl = RedisConstants.CACHE_BLOG_TTL, hardTtl = RedisConstants.CACHE_BLOG_HARD_TTL)
+    public Blog queryBlogWithAuthor(Long blogId) {
         Blog blog = getById(blogId);
+        if(blog == null){
+            return null;
+        }
         //附加用户信息
         setUserInfo(blog);
-        blog.setIsLike(getCurrentUserLikedStatus(blog.getId()));
-        return Result.ok(blog);
+        return blog;
     }
 
     @Override
@@ -84,6 +114,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
     @Override
+    @CacheEvict(prefix = RedisConstants.CACHE_BLOG_KEY, key = "#blogId")
     public Result likeBlog(Long blogId) {
         //判断当前用户是否已点过赞
         Long userId = UserHolder.getUser().getId();
@@ -154,6 +185,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
 
     @Override
+    @CacheEvict(prefix = RedisConstants.CACHE_BLOG_KEY, key = "#blog.id")
     public Result saveBlog(Blog blog) {
         // 获取登录用户
         Long currentUserId = UserHolder.getUser().getId();
@@ -163,6 +195,11 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if(!isSuccess){
             return Result.fail("发布笔记失败！");
         }
+        blogBloomFilter.put(blog.getId());
+        //探店笔记计入店铺的评论数
+        if(blog.getShopId() != null){
+            shopHashService.incrementCounter(blog.getShopId(), "comments", 1);
+        }
 
         //推送博文信息给粉丝:
         //获取推送时间
@@ -0,0 +1,209 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.ICacheWarmupService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.constant.RedisConstants;
+import com.hmdp.utils.seckill.SeckillStockManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *  缓存预热服务实现类
+ *  按主键分批（keyset分页）流式读取数据库，读取线程只负责查询，序列化和管道写入交给并行的写入线程，
+ *  内存中最多积压 concurrency 批数据
+ * </p>
+ */
+@Slf4j
+@Service
+public class CacheWarmupServiceImpl implements ICacheWarmupService {
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheClient cacheClient;
+
+    private final IShopService shopService;
+
+    private final IShopTypeService shopTypeService;
+
+    private final ISeckillVoucherService seckillVoucherService;
+
+    private final CacheProperties cacheProperties;
+
+    private final SeckillStockManager seckillStockManager;
+
+    //同一时间只允许一次预热
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public CacheWarmupServiceImpl(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient,
+                                  IShopService shopService, IShopTypeService shopTypeService,
+                                  ISeckillVoucherService seckillVoucherService, CacheProperties cacheProperties,
+                                  SeckillStockManager seckillStockManager){
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheClient = cacheClient;
+        this.shopService = shopService;
+        this.shopTypeService = shopTypeService;
+        this.seckillVoucherService = seckillVoucherService;
+        this.cacheProperties = cacheProperties;
+        this.seckillStockManager = seckillStockManager;
+    }
+
+    @Override
+    public Result warmup() {
+        if(!running.compareAndSet(false, true)){
+            return Result.fail("缓存预热正在进行中！");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("shops", warmupShops());
+            report.put("shopTypes", warmupShopTypes());
+            report.put("seckillStocks", warmupSeckillStocks());
+            report.put("costMillis", System.currentTimeMillis() - start);
+            log.info("缓存预热完成：{}", report);
+            return Result.ok(report);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 预热店铺信息（逻辑过期）
+     * @return 预热条数
+     */
+    private long warmupShops() {
+        CacheProperties.Warmup warmup = cacheProperties.getWarmup();
+        int concurrency = Math.max(warmup.getConcurrency(), 1);
+        ExecutorService writers = Executors.newFixedThreadPool(concurrency);
+        //限制积压的批数，避免读取快于写入时把整张表读入内存
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicLong written = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long start = System.currentTimeMillis();
+        long lastId = 0L;
+        try {
+            while (true) {
+                long loadStart = System.currentTimeMillis();
+                List<Shop> shops = shopService.query()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + warmup.getBatchSize())
+                        .list();
+                if (shops.isEmpty()) {
+                    break;
+                }
+                long loadMillis = System.currentTimeMillis() - loadStart;
+                lastId = shops.get(shops.size() - 1).getId();
+                permits.acquire();
+                writers.submit(() -> {
+                    try {
+                        Map<String, Shop> values = new LinkedHashMap<>(shops.size());
+                        shops.forEach(shop -> values.put(RedisConstants.CACHE_SHOP_KEY + shop.getId(), shop));
+                        cacheClient.setBatchWithLogicalExpire(values,
+                                RedisConstants.CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS, loadMillis);
+                        long total = written.addAndGet(shops.size());
+                        long cost = Math.max(System.currentTimeMillis() - start, 1L);
+                        log.info("店铺缓存预热进度：{}条，{}条/秒", total, total * 1000 / cost);
+                    } catch (Exception e) {
+                        failed.addAndGet(shops.size());
+                        log.error("店铺缓存预热失败，本批{}条", shops.size(), e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            //等待所有批次写入完成
+            permits.acquire(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            writers.shutdown();
+        }
+        if (failed.get() > 0) {
+            log.warn("店铺缓存预热有{}条写入失败，将在首次访问时懒加载", failed.get());
+        }
+        return written.get();
+    }
+
+    /**
+     * 预热店铺类型列表
+     * @return 预热条数
+     */
+    private long warmupShopTypes() {
+        List<ShopType> shopTypeList = shopTypeService.query().orderByAsc("sort").list();
+        if (shopTypeList.isEmpty()) {
+            return 0L;
+        }
+        String shopListJson = JSONUtil.toJsonStr(shopTypeList);
+        String previous = stringRedisTemplate.opsForValue().getAndSet(RedisConstants.CACHE_SHOP_LIST_KEY, shopListJson);
+        //内容有变化时才广播，避免每次启动都让所有实例刷新快照
+        if (!shopListJson.equals(previous)) {
+            shopTypeService.publishTypeListChange();
+        }
+        return shopTypeList.size();
+    }
+
+    /**
+     * 预热未结束的秒杀券库存和秒杀时段
+     * 使用SETNX写入，Redis中已有的库存是扣减过的实时数据，不能被数据库中的值覆盖
+     * @return 新写入的条数
+     */
+    private long warmupSeckillStocks() {
+        int batchSize = cacheProperties.getWarmup().getBatchSize();
+        LocalDateTime now = LocalDateTime.now();
+        long written = 0L;
+        long lastId = 0L;
+        while (true) {
+            List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                    .gt("voucher_id", lastId)
+                    .gt("end_time", now)
+                    .orderByAsc("voucher_id")
+                    .last("LIMIT " + batchSize)
+                    .list();
+            if (vouchers.isEmpty()) {
+                break;
+            }
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            Map<Long, Integer> shards = seckillStockManager.loadShards(
+                    vouchers.stream().map(SeckillVoucher::getVoucherId).collect(Collectors.toList()));
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (SeckillVoucher voucher : vouchers) {
+                    seckillStockManager.restore(connection, voucher, shards.get(voucher.getVoucherId()));
+                }
+                return null;
+            });
+            //每张券3条元数据HSETNX + 每个分片1条SETNX，只统计第一个分片的SETNX
+            int offset = 0;
+            for (SeckillVoucher voucher : vouchers) {
+                if (Boolean.TRUE.equals(results.get(offset + 3))) {
+                    written++;
+                }
+                offset += 3 + shards.get(voucher.getVoucherId());
+            }
+        }
+        return written;
+    }
+}
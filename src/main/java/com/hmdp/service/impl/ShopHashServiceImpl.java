@@ -0,0 +1,347 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.date.DatePattern;
+import cn.hutool.core.date.LocalDateTimeUtil;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.dto.ShopCounterDelta;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopHashService;
+import com.hmdp.utils.cache.CacheTtlPolicy;
+import com.hmdp.utils.cache.ExistenceFilter;
+import com.hmdp.utils.constant.RedisConstants;
+import com.hmdp.utils.lock.SimpleRedisLockV2;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *  店铺哈希缓存服务实现类
+ *  计数器增量保存在 shop:counter:delta 哈希中（字段为 店铺id:计数器字段），写回时先改名为 shop:counter:flushing，
+ *  写入数据库后删除；写回过程用写回序号标记（奇数表示写回中），加载缓存时据此判断数据库中的值是否已包含增量
+ *  每条UPDATE语句提交后立即从写回中的增量里删除这一批店铺的字段，写回中断（异常、进程退出、锁过期）后，
+ *  下次写回只处理剩余的增量；提交后、删除前进程退出时，下次写回仍会执行这一条语句，
+ *  数据库中记录了每个店铺最后累加的写回批次号，同一批次的增量不会重复累加
+ *  写回过程中每条语句执行前为锁续期，锁已丢失时停止写回，避免两个节点同时写回同一批增量；
+ *  每次开始写回得到新的写回序号，结束时序号不一致（已被其他节点接手）则不删除写回中的增量
+ * </p>
+ */
+@Slf4j
+@Service
+public class ShopHashServiceImpl implements IShopHashService {
+    private static final List<String> COUNTER_FIELDS = Arrays.asList("sold", "comments");
+
+    //数据库中的全部字段，缓存中的字段与其一致
+    private static final List<String> ALL_FIELDS;
+
+    private static final DefaultRedisScript<Long> COUNTER_INCR_SCRIPT;
+
+    private static final DefaultRedisScript<Long> HASH_INIT_SCRIPT;
+
+    private static final DefaultRedisScript<Long> COUNTER_FLUSH_SCRIPT;
+
+    private static final DefaultRedisScript<Long> HASH_EVICT_SCRIPT;
+
+    static {
+        List<String> fields = new ArrayList<>();
+        for (Field field : Shop.class.getDeclaredFields()) {
+            TableField tableField = field.getAnnotation(TableField.class);
+            if (Modifier.isStatic(field.getModifiers()) || (tableField != null && !tableField.exist())) {
+                continue;
+            }
+            fields.add(field.getName());
+        }
+        //id放在第一位，用于判断缓存是否存在
+        fields.remove("id");
+        fields.add(0, "id");
+        ALL_FIELDS = Collections.unmodifiableList(fields);
+
+        COUNTER_INCR_SCRIPT = new DefaultRedisScript<>();
+        COUNTER_INCR_SCRIPT.setLocation(new ClassPathResource("shop_counter_incr.lua"));
+        COUNTER_INCR_SCRIPT.setResultType(Long.class);
+
+        HASH_INIT_SCRIPT = new DefaultRedisScript<>();
+        HASH_INIT_SCRIPT.setLocation(new ClassPathResource("shop_hash_init.lua"));
+        HASH_INIT_SCRIPT.setResultType(Long.class);
+
+        COUNTER_FLUSH_SCRIPT = new DefaultRedisScript<>();
+        COUNTER_FLUSH_SCRIPT.setLocation(new ClassPathResource("shop_counter_flush.lua"));
+        COUNTER_FLUSH_SCRIPT.setResultType(Long.class);
+
+        HASH_EVICT_SCRIPT = new DefaultRedisScript<>();
+        HASH_EVICT_SCRIPT.setLocation(new ClassPathResource("shop_hash_evict.lua"));
+        HASH_EVICT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ShopMapper shopMapper;
+
+    private final CacheTtlPolicy ttlPolicy;
+
+    private final ExistenceFilter shopBloomFilter;
+
+    private final int flushBatchSize;
+
+    //未开启店铺哈希缓存时为null，不定时写回
+    private final ScheduledExecutorService flushExecutor;
+
+    public ShopHashServiceImpl(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper, CacheTtlPolicy ttlPolicy,
+                               @Qualifier("shopBloomFilter") ExistenceFilter shopBloomFilter,
+                               CacheProperties cacheProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.ttlPolicy = ttlPolicy;
+        this.shopBloomFilter = shopBloomFilter;
+        CacheProperties.ShopHash shopHash = cacheProperties.getShopHash();
+        this.flushBatchSize = shopHash.getFlushBatchSize();
+        if (!shopHash.isEnabled()) {
+            this.flushExecutor = null;
+            return;
+        }
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shop-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = shopHash.getFlushIntervalSeconds();
+        flushExecutor.scheduleWithFixedDelay(this::scheduledFlush, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Shop queryShop(Long shopId, String... fields) {
+        if (!shopBloomFilter.mightContain(shopId)) {
+            return null;
+        }
+        //id一定不为空，用于区分缓存不存在和所查字段均为空
+        List<String> projection = projection(fields);
+        String key = RedisConstants.CACHE_SHOP_HASH_KEY + shopId;
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, new ArrayList<>(projection));
+        if (values.get(0) != null) {
+            return toShop(projection, values);
+        }
+        //缓存不存在：从数据库加载
+        Shop shop = load(shopId);
+        if (shop == null) {
+            shopBloomFilter.recordFalsePositive();
+            return null;
+        }
+        //重新读取缓存，得到包含未写回增量的计数器
+        values = stringRedisTemplate.opsForHash().multiGet(key, new ArrayList<>(projection));
+        if (values.get(0) != null) {
+            return toShop(projection, values);
+        }
+        //正在写回，未能写入缓存，直接使用数据库中的值
+        Map<String, Object> shopMap = BeanUtil.beanToMap(shop);
+        return toShop(projection, projection.stream().map(shopMap::get).collect(Collectors.toList()));
+    }
+
+    @Override
+    public Long incrementCounter(Long shopId, String field, long delta) {
+        if (!COUNTER_FIELDS.contains(field)) {
+            throw new IllegalArgumentException("不支持的店铺计数器：" + field);
+        }
+        if (flushExecutor == null) {
+            //不定时写回，增量直接累加到数据库
+            ShopCounterDelta shopDelta = new ShopCounterDelta();
+            shopDelta.setShopId(shopId);
+            if ("sold".equals(field)) {
+                shopDelta.setSold(delta);
+            } else {
+                shopDelta.setComments(delta);
+            }
+            shopMapper.incrementCounters(Collections.singletonList(shopDelta), null);
+            return null;
+        }
+        return stringRedisTemplate.execute(COUNTER_INCR_SCRIPT,
+                Arrays.asList(RedisConstants.CACHE_SHOP_HASH_KEY + shopId, RedisConstants.SHOP_COUNTER_DELTA_KEY),
+                field, String.valueOf(delta), shopId + ":" + field);
+    }
+
+    @Override
+    public void evict(Long shopId, LocalDateTime updateTime) {
+        String key = RedisConstants.CACHE_SHOP_HASH_KEY + shopId;
+        if (updateTime == null) {
+            stringRedisTemplate.delete(key);
+            return;
+        }
+        stringRedisTemplate.execute(HASH_EVICT_SCRIPT, Collections.singletonList(key), toHashValue(updateTime),
+                String.valueOf(ttlPolicy.ttlMillis(key, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES)));
+    }
+
+    @Override
+    public int flushCounters() {
+        //多个节点同时只有一个在写回
+        SimpleRedisLockV2 lock = new SimpleRedisLockV2(stringRedisTemplate, RedisConstants.LOCK_SHOP_COUNTER_FLUSH_NAME);
+        if (!lock.tryLock(RedisConstants.LOCK_SHOP_COUNTER_FLUSH_TTL)) {
+            return 0;
+        }
+        try {
+            List<String> keys = Arrays.asList(RedisConstants.SHOP_COUNTER_DELTA_KEY,
+                    RedisConstants.SHOP_COUNTER_FLUSHING_KEY, RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY,
+                    RedisConstants.SHOP_COUNTER_FLUSH_GEN_KEY);
+            //本次写回的序号，结束时用于判断是否已被其他节点接手
+            Long flushSeq = stringRedisTemplate.execute(COUNTER_FLUSH_SCRIPT, keys, "begin");
+            if (flushSeq == null || flushSeq == 0L) {
+                return 0;
+            }
+            //写回批次号，继续上次未完成的写回时不变，数据库据此跳过已累加过的店铺
+            Long flushGen = Long.valueOf(stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_COUNTER_FLUSH_GEN_KEY));
+            //按店铺汇总
+            Map<Long, ShopCounterDelta> deltas = new LinkedHashMap<>();
+            stringRedisTemplate.opsForHash().entries(RedisConstants.SHOP_COUNTER_FLUSHING_KEY).forEach((k, v) -> {
+                String deltaField = (String) k;
+                int index = deltaField.lastIndexOf(':');
+                Long shopId = Long.valueOf(deltaField.substring(0, index));
+                long delta = Long.parseLong((String) v);
+                ShopCounterDelta shopDelta = deltas.computeIfAbsent(shopId, id -> {
+                    ShopCounterDelta d = new ShopCounterDelta();
+                    d.setShopId(id);
+                    return d;
+                });
+                if ("sold".equals(deltaField.substring(index + 1))) {
+                    shopDelta.setSold(shopDelta.getSold() + delta);
+                } else {
+                    shopDelta.setComments(shopDelta.getComments() + delta);
+                }
+            });
+            List<ShopCounterDelta> list = new ArrayList<>(deltas.values());
+            list.removeIf(d -> d.getSold() == 0 && d.getComments() == 0);
+            for (int i = 0; i < list.size(); i += flushBatchSize) {
+                List<ShopCounterDelta> batch = list.subList(i, Math.min(i + flushBatchSize, list.size()));
+                if (!lock.renew(RedisConstants.LOCK_SHOP_COUNTER_FLUSH_TTL)) {
+                    //锁已过期，可能已有其他节点接手，剩余的增量由持锁的节点写回
+                    log.warn("店铺计数器写回锁已丢失，停止写回，已写回{}个店铺", i);
+                    return i;
+                }
+                shopMapper.incrementCounters(batch, flushGen);
+                //每条语句自动提交，提交后立即删除已写回的增量，中断后不会重复写回
+                Object[] flushedFields = batch.stream()
+                        .flatMap(d -> COUNTER_FIELDS.stream().map(field -> d.getShopId() + ":" + field))
+                        .toArray();
+                stringRedisTemplate.opsForHash().delete(RedisConstants.SHOP_COUNTER_FLUSHING_KEY, flushedFields);
+            }
+            Long ended = stringRedisTemplate.execute(COUNTER_FLUSH_SCRIPT, keys, "end", flushSeq.toString());
+            if (ended == null || ended == 0L) {
+                log.warn("店铺计数器写回已被其他节点接手，写回序号: {}", flushSeq);
+            }
+            return list.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flushExecutor == null) {
+            return;
+        }
+        //等待正在执行的写回结束，再写回一次，减少进程退出时未写回的增量
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(RedisConstants.LOCK_SHOP_COUNTER_FLUSH_TTL, TimeUnit.SECONDS);
+        scheduledFlush();
+    }
+
+    private void scheduledFlush() {
+        try {
+            int flushed = flushCounters();
+            if (flushed > 0) {
+                log.debug("店铺计数器已写回数据库，店铺数: {}", flushed);
+            }
+        } catch (Exception e) {
+            log.error("店铺计数器写回数据库失败，下次继续写回", e);
+        }
+    }
+
+    /**
+     * 从数据库加载店铺并写入哈希缓存，正在写回计数器或读到的数据早于缓存中保留的更新时间时不写入
+     * @return 数据库中的店铺，不存在时返回null
+     */
+    private Shop load(Long shopId) {
+        //先读写回序号再读数据库，写入时序号不变说明期间没有发生写回
+        String seq = stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY);
+        Shop shop = shopMapper.selectById(shopId);
+        if (shop == null) {
+            return null;
+        }
+        String key = RedisConstants.CACHE_SHOP_HASH_KEY + shopId;
+        Map<String, Object> shopMap = BeanUtil.beanToMap(shop, new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> toHashValue(fieldValue)));
+        List<String> args = new ArrayList<>(4 + shopMap.size() * 2);
+        args.add(seq == null ? "0" : seq);
+        args.add(String.valueOf(ttlPolicy.ttlMillis(key, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES)));
+        args.add(shopId.toString());
+        //版本号，与删除缓存时保留的更新时间比较
+        args.add(shop.getUpdateTime() == null ? "" : toHashValue(shop.getUpdateTime()));
+        shopMap.forEach((field, value) -> {
+            args.add(field);
+            args.add((String) value);
+        });
+        stringRedisTemplate.execute(HASH_INIT_SCRIPT,
+                Arrays.asList(key, RedisConstants.SHOP_COUNTER_DELTA_KEY, RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY),
+                args.toArray());
+        return shop;
+    }
+
+    /**
+     * 时间按秒格式化，LocalDateTime.toString()带纳秒时转换回来不可靠
+     */
+    private static String toHashValue(Object value) {
+        if (value instanceof LocalDateTime) {
+            return LocalDateTimeUtil.format((LocalDateTime) value, DatePattern.NORM_DATETIME_PATTERN);
+        }
+        return value == null ? null : value.toString();
+    }
+
+    private static List<String> projection(String... fields) {
+        if (fields == null || fields.length == 0) {
+            return ALL_FIELDS;
+        }
+        Set<String> projection = new LinkedHashSet<>();
+        projection.add("id");
+        for (String field : fields) {
+            if (!ALL_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("店铺没有字段：" + field);
+            }
+            projection.add(field);
+        }
+        return new ArrayList<>(projection);
+    }
+
+    private static Shop toShop(List<String> fields, List<Object> values) {
+        Map<String, Object> shopMap = new HashMap<>(fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            if (values.get(i) != null) {
+                shopMap.put(fields.get(i), values.get(i));
+            }
+        }
+        return BeanUtil.toBean(shopMap, Shop.class);
+    }
+}
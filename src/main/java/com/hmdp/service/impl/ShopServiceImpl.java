@@ -1,20 +1,23 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.config.CacheProperties;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.RedisData;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopHashService;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.cache.ExistenceFilter;
 import com.hmdp.utils.constant.RedisConstants;
 import com.hmdp.utils.constant.SystemConstants;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -25,9 +28,9 @@ import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,8 +46,25 @@ import java.util.concurrent.TimeUnit;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
     private final StringRedisTemplate stringRedisTemplate;
 
-    public ShopServiceImpl(StringRedisTemplate stringRedisTemplate){
+    private final CacheClient cacheClient;
+
+    private final ExistenceFilter shopBloomFilter;
+
+    private final IShopHashService shopHashService;
+
+    private final boolean shopHashEnabled;
+
+    public ShopServiceImpl(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient,
+                           @Qualifier("shopBloomFilter") ExistenceFilter shopBloomFilter,
+                           IShopHashService shopHashService, CacheProperties cacheProperties){
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheClient = cacheClient;
+        this.shopBloomFilter = shopBloomFilter;
+        this.shopHashService = shopHashService;
+        this.shopHashEnabled = cacheProperties.getShopHash().isEnabled();
+        //以更新时间作为缓存版本号，异步重建读到的旧数据不会覆盖更新后写入的新数据
+        cacheClient.registerVersionResolver(Shop.class, shop -> shop.getUpdateTime() == null
+                ? 0L : shop.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
     }
 
     @Override
@@ -53,75 +73,51 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         //Shop shop = queryWithPassThrough(id);
         //添加互斥锁方案解决缓存击穿
         //Shop shop = queryWithMutex(id);
-        //添加逻辑过期机制解决缓存击穿
-        Shop shop = queryWithLogicalExpire(id);
+        //软过期+硬过期，过期后先返回旧数据再后台刷新，无需预热
+        //Shop shop = queryWithStaleWhileRevalidate(id);
+        //添加逻辑过期机制解决缓存击穿；开启哈希缓存时按字段读取，计数器的变化不会使缓存失效
+        Shop shop = shopHashEnabled ? shopHashService.queryShop(id) : queryWithLogicalExpire(id);
         if(shop == null){
             return Result.fail("无对应店铺信息！");
         }
         return Result.ok(shop);
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);    /**
+    /**
      * 基于逻辑过期机制获取店铺信息，解决缓存穿透、击穿
-     * 执行此方法前默认已做缓存预热，在Redis中无法命中的店铺信息将直接返回null
+     * 未预热的店铺信息在首次访问时懒加载，数据库中不存在时返回null
+     * 返回的对象可能来自本地缓存，调用方不能修改
      * @param id
      * @return
      */
     public Shop queryWithLogicalExpire(Long id){
-        String shopKey = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(shopKey);
-        //缓存未命中，直接返回null
-        if(StrUtil.isBlank(shopJson)){
-            return null;
-        }
-        //缓存命中：
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        //判断是否过期
-        if(redisData.getExpireTime().isAfter(LocalDateTime.now())){
-            //未过期，直接返回
-            return shop;
-        }
-        //过期，缓存重建：
-        //获取互斥锁
-        String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
-
-        if (tryToGetLock(lockKey)) {
-            //成功获取锁:
-            //再次判断是否过期
-            if(redisData.getExpireTime().isAfter(LocalDateTime.now())){
-                //未过期，直接返回
-                return shop;
-            }
-            //开启新线程完成缓存更新
-            CACHE_REBUILD_EXECUTOR.submit( ()->{
-                try{
-                    //重建缓存
-                    this.saveShop2Redis(id,20L);
-                }catch (Exception e){
-                    throw new RuntimeException(e);
-                }finally {
-                    unlock(lockKey);
-                }
-            });
-        }
-        //返回过期的商户信息
-        return shop;
+        return cacheClient.queryWithLogicalExpire(
+                RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                RedisConstants.CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
     }
 
+    /**
+     * 基于逻辑过期机制批量获取店铺信息，已被删除的店铺不在结果中
+     * 返回的对象可能来自本地缓存，调用方不能修改
+     * @param ids
+     * @return 店铺id -> 店铺信息，按ids的顺序排列
+     */
+    public Map<Long, Shop> queryBatchWithLogicalExpire(Collection<Long> ids){
+        return cacheClient.queryBatchWithLogicalExpire(
+                RedisConstants.CACHE_SHOP_KEY, ids, Shop.class, this::listByIds, Shop::getId,
+                RedisConstants.CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
+    }
 
     /**
-     * 店铺信息缓存预热，用于提前把热点Key写入缓存中
+     * 单个店铺信息缓存预热，用于提前把热点Key写入缓存中，全量预热见CacheWarmupServiceImpl
      * @param id
      */
     public void saveShop2Redis(Long id, Long expireSeconds){
+        long start = System.currentTimeMillis();
         Shop shop = getById(id);
-        RedisData<Shop> redisData = new RedisData<>();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //模拟缓存更新延迟
-        ThreadUtil.safeSleep(500);
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        //记录重建耗时，读取时据此提前刷新
+        cacheClient.setWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS,
+                System.currentTimeMillis() - start);
     }
 
     /**
@@ -195,31 +191,46 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return
      */
     private Shop queryWithPassThrough(Long id) {
-        //从redis缓存中查询商铺
-        String shopCacheKey = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(shopCacheKey);
-        //缓存命中，直接返回
-        if(!StrUtil.isBlank(shopJson)){
-            return JSONUtil.toBean(shopJson, Shop.class);
+        return cacheClient.queryWithPassThrough(
+                RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 根据ID查询店铺信息，软过期后返回旧数据并后台刷新，硬过期后同步查询数据库
+     * @param id
+     * @return
+     */
+    private Shop queryWithStaleWhileRevalidate(Long id) {
+        return cacheClient.queryWithStaleWhileRevalidate(
+                RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                RedisConstants.CACHE_SHOP_LOGICAL_TTL, TimeUnit.MINUTES.toSeconds(RedisConstants.CACHE_SHOP_TTL),
+                TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Result queryByIds(List<Long> ids) {
+        if(ids == null || ids.isEmpty()){
+            return Result.ok(Collections.emptyList());
         }
-        //缓存命中空值，直接报错
-        if(shopJson != null){
-            return null;
+        if(ids.size() > SystemConstants.MAX_BATCH_SIZE){
+            return Result.fail("单次最多查询" + SystemConstants.MAX_BATCH_SIZE + "个店铺！");
         }
+        //去重，保持传入顺序
+        Map<Long, Shop> shops = queryBatchWithLogicalExpire(new LinkedHashSet<>(ids));
+        return Result.ok(new ArrayList<>(shops.values()));
+    }
 
-        //缓存未命中：
-        //查询数据库
-        Shop shop = getById(id);
-        //数据库中没有对应信息
-        if(shop == null){
-            //缓存写入空值
-            stringRedisTemplate.opsForValue().set(shopCacheKey, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
-        }
-        //更新缓存
-        stringRedisTemplate.opsForValue().set(shopCacheKey, JSONUtil.toJsonStr(shop), RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        //返回数据
-        return shop;
+    @Override
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 写入布隆过滤器，否则新店铺会被判断为不存在
+        shopBloomFilter.put(shop.getId());
+        // 清除空值记录，该id之前可能被查询过
+        cacheClient.clearNegative(RedisConstants.CACHE_SHOP_KEY, shop.getId());
+        // 返回店铺id
+        return Result.ok(shop.getId());
     }
 
     @Override
@@ -228,10 +239,21 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(id == null){
             return Result.fail("店铺id不能为空！");
         }
+        //更新时间是缓存的版本号，由服务端生成，不能沿用客户端传入的值，否则旧版本可能覆盖新数据；
+        //截断到秒，与数据库datetime精度一致，避免毫秒部分进位
+        shop.setUpdateTime(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
         //操作数据库
         updateById(shop);
-        //更新缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + id);
+        //写穿缓存：重新读取数据库中的完整数据，按更新时间作为版本号写入，同时广播各节点删除本地缓存
+        String key = RedisConstants.CACHE_SHOP_KEY + id;
+        Shop updated = getById(id);
+        //店铺哈希缓存只删除，保留更新时间作为版本号
+        shopHashService.evict(id, updated == null ? null : updated.getUpdateTime());
+        if(updated == null){
+            cacheClient.delete(key);
+            return Result.ok();
+        }
+        cacheClient.writeThrough(key, updated, RedisConstants.CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
         return Result.ok();
     }
 
@@ -285,12 +307,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                 }
         );
 
-        Set<Long> shopIds = shopDistanceMap.keySet();
-        List<Shop> shops = new ArrayList<>(end - from + 1);
-        //根据店铺id查询店铺数据
-        shopIds.forEach(
-                shopId -> {
-                    Shop shop = queryWithLogicalExpire(shopId);
+        //根据店铺id批量查询店铺数据，往返次数与分页大小无关
+        Map<Long, Shop> cachedShops = queryBatchWithLogicalExpire(shopDistanceMap.keySet());
+        List<Shop> shops = new ArrayList<>(cachedShops.size());
+        cachedShops.forEach(
+                (shopId, cachedShop) -> {
+                    //缓存中的对象可能被多个请求共享，拷贝后再填充距离
+                    Shop shop = BeanUtil.copyProperties(cachedShop, Shop.class);
                     shop.setDistance(shopDistanceMap.get(shopId).getValue());
                     shops.add(shop);
                 }
@@ -2,16 +2,29 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.cache.CacheMetrics;
 import com.hmdp.utils.constant.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -21,31 +34,164 @@ import java.util.List;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
+    private static final ScheduledExecutorService VERSION_CHECK_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
     private final StringRedisTemplate stringRedisTemplate;
 
-    public ShopTypeServiceImpl(StringRedisTemplate stringRedisTemplate){
+    private final CacheMetrics cacheMetrics;
+
+    private final ObjectMapper objectMapper;
+
+    private final Object loadLock = new Object();
+
+    //店铺类型几乎不变，整个列表以快照形式保存在进程内，版本号变化时整体替换
+    private volatile ShopTypeSnapshot snapshot;
+
+    public ShopTypeServiceImpl(StringRedisTemplate stringRedisTemplate, CacheMetrics cacheMetrics,
+                               ObjectMapper objectMapper, RedisMessageListenerContainer listenerContainer){
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheMetrics = cacheMetrics;
+        this.objectMapper = objectMapper;
+        //变更广播，消息内容为新的版本号
+        listenerContainer.addMessageListener(
+                (message, pattern) -> refreshIfChanged(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(RedisConstants.CACHE_SHOP_LIST_CHANNEL));
+        //定期比对版本号，兜底订阅断线期间丢失的广播
+        long interval = RedisConstants.CACHE_SHOP_LIST_VERSION_CHECK_INTERVAL;
+        VERSION_CHECK_EXECUTOR.scheduleWithFixedDelay(this::checkVersion, interval, interval, TimeUnit.SECONDS);
     }
 
     @Override
     public Result queryTypeList() {
+        ShopTypeSnapshot current = getSnapshot();
+        if (current == null) {
+            return Result.fail("查询店铺类型失败！");
+        }
+        return Result.ok(current.getTypes());
+    }
+
+    @Override
+    public ShopTypeSnapshot getSnapshot() {
+        ShopTypeSnapshot current = snapshot;
+        if (current != null) {
+            cacheMetrics.recordGet(RedisConstants.CACHE_SHOP_LIST_KEY, CacheMetrics.LOCAL_HIT);
+            return current;
+        }
+        //首次访问时加载，并发的请求只加载一次
+        synchronized (loadLock) {
+            current = snapshot;
+            if (current != null) {
+                cacheMetrics.recordGet(RedisConstants.CACHE_SHOP_LIST_KEY, CacheMetrics.LOCAL_HIT);
+                return current;
+            }
+            current = loadSnapshot();
+            snapshot = current;
+            return current;
+        }
+    }
+
+    @Override
+    public void refreshTypeList() {
+        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_LIST_KEY);
+        publishTypeListChange();
+    }
+
+    @Override
+    public void publishTypeListChange() {
+        Long version = stringRedisTemplate.opsForValue().increment(RedisConstants.CACHE_SHOP_LIST_VERSION_KEY);
+        stringRedisTemplate.convertAndSend(RedisConstants.CACHE_SHOP_LIST_CHANNEL, String.valueOf(version));
+    }
+
+    /**
+     * 定期读取Redis中的版本号，与快照不一致时重新加载；快照尚未加载时跳过，等待首次访问
+     */
+    private void checkVersion() {
+        try {
+            if (snapshot != null) {
+                refreshIfChanged(readVersion());
+            }
+        } catch (Exception e) {
+            log.error("店铺类型版本号检查失败", e);
+        }
+    }
+
+    /**
+     * 版本号与当前快照不一致时重新加载
+     * 用不等而不是小于判断，Redis数据被清空、版本号归零后同样能刷新
+     */
+    private void refreshIfChanged(long version) {
+        ShopTypeSnapshot current = snapshot;
+        if (current != null && current.getVersion() == version) {
+            return;
+        }
+        synchronized (loadLock) {
+            current = snapshot;
+            if (current != null && current.getVersion() == version) {
+                return;
+            }
+            ShopTypeSnapshot loaded = loadSnapshot();
+            if (loaded != null) {
+                snapshot = loaded;
+                log.info("店铺类型快照已刷新，版本号: {}，类型数: {}", loaded.getVersion(), loaded.getTypes().size());
+            }
+        }
+    }
+
+    /**
+     * 加载快照，并预先序列化响应体、计算eTag
+     * 先读版本号再读数据，读取期间发生的变更会带着更大的版本号再次触发刷新
+     * @return 快照，数据库中没有店铺类型时返回null
+     */
+    private ShopTypeSnapshot loadSnapshot() {
+        long version = readVersion();
+        List<ShopType> shopTypeList = loadTypeList();
+        if (shopTypeList.isEmpty()) {
+            return null;
+        }
+        shopTypeList = Collections.unmodifiableList(shopTypeList);
+        byte[] body;
+        try {
+            //与接口直接返回Result时使用同一个ObjectMapper，输出一致
+            body = objectMapper.writeValueAsBytes(Result.ok(shopTypeList));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("店铺类型序列化失败", e);
+        }
+        String eTag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        return new ShopTypeSnapshot(version, shopTypeList, body, eTag);
+    }
+
+    private List<ShopType> loadTypeList() {
         //查询缓存
         String shopListJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_LIST_KEY);
         if(!StrUtil.isBlank(shopListJson)){
-            List<ShopType> shopTypeList = JSONUtil.toList(shopListJson, ShopType.class);
-            return Result.ok(shopTypeList);
+            cacheMetrics.recordGet(RedisConstants.CACHE_SHOP_LIST_KEY, CacheMetrics.HIT);
+            return JSONUtil.toList(shopListJson, ShopType.class);
         }
 
         //缓存未命中：查询数据库
-        List<ShopType> shopTypeList = query().orderByAsc("sort").list();
+        cacheMetrics.recordGet(RedisConstants.CACHE_SHOP_LIST_KEY, CacheMetrics.MISS);
+        long start = System.nanoTime();
+        List<ShopType> shopTypeList;
+        try {
+            shopTypeList = query().orderByAsc("sort").list();
+        } catch (RuntimeException e) {
+            cacheMetrics.recordRebuildFailure(RedisConstants.CACHE_SHOP_LIST_KEY);
+            throw e;
+        }
         if(shopTypeList.isEmpty()){
-            return Result.fail("查询店铺类型失败！");
+            return shopTypeList;
         }
         //写入缓存
         stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_LIST_KEY, JSONUtil.toJsonStr(shopTypeList));
+        cacheMetrics.recordRebuild(RedisConstants.CACHE_SHOP_LIST_KEY, System.nanoTime() - start);
+        return shopTypeList;
+    }
 
-        return Result.ok(shopTypeList);
+    private long readVersion() {
+        String version = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_LIST_VERSION_KEY);
+        return StrUtil.isBlank(version) ? 0L : Long.parseLong(version);
     }
 }
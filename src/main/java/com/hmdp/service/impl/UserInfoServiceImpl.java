@@ -4,6 +4,8 @@ import com.hmdp.entity.UserInfo;
 import com.hmdp.mapper.UserInfoMapper;
 import com.hmdp.service.IUserInfoService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.cache.Cached;
+import com.hmdp.utils.constant.RedisConstants;
 import org.springframework.stereotype.Service;
 
 /**
@@ -17,4 +19,15 @@ import org.springframework.stereotype.Service;
 @Service
 public class UserInfoServiceImpl extends ServiceImpl<UserInfoMapper, UserInfo> implements IUserInfoService {
 
+    @Override
+    @Cached(prefix = RedisConstants.CACHE_USER_INFO_KEY, key = "#userId", ttl = RedisConstants.CACHE_USER_INFO_TTL)
+    public UserInfo queryUserInfo(Long userId) {
+        UserInfo info = getById(userId);
+        if (info == null) {
+            return null;
+        }
+        info.setCreateTime(null);
+        info.setUpdateTime(null);
+        return info;
+    }
 }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
@@ -14,28 +13,29 @@ import com.hmdp.utils.constant.RedisConstants;
 import com.hmdp.utils.constant.VoucherOrderConstants;
 import com.hmdp.utils.lock.SimpleRedisLock;
 import com.hmdp.utils.lock.SimpleRedisLockV2;
+import com.hmdp.utils.seckill.SeckillStockManager;
+import com.hmdp.utils.seckill.SoldOutRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import sun.awt.AppContext;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -45,6 +45,7 @@ import java.util.concurrent.Executors;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
     @Resource
@@ -55,6 +56,12 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillStockManager seckillStockManager;
+
     //@Resource
     //private RedissonClient redissonClient;
 
@@ -66,91 +73,35 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_QUALIFICATION_CHECK.setResultType(Long.class);
     }
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-
     //private BlockingQueue<VoucherOrder> orderProcessingQueue = new ArrayBlockingQueue<VoucherOrder>(1024*1024);
 
-    @PostConstruct
-    public void init(){
-        SECKILL_ORDER_EXECUTOR.submit(new SeckillOrderHandler());
-    }
-
-    private class SeckillOrderHandler implements Runnable{
-        @Override
-        @Transactional
-        public void run () {
-            while (true){
-                try {
-                    //VoucherOrder voucherOrder = orderProcessingQueue.take();
-                    //从消息队列中获取消息
-                    List<MapRecord<String, Object, Object>> read = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create("stream.orders", ReadOffset.lastConsumed())
-                    );
-                    if(read == null || read.isEmpty()){
-                        //没有消息，直接开启下一轮循环
-                        continue;
-                    }
-
-                    //有消息，开始解析消息
-                    MapRecord<String, Object, Object> record = read.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), false);
-                    save(voucherOrder);
-
-                    seckillVoucherService.update()
-                            .setSql("stock = stock - 1")
-                            .eq("voucher_id", voucherOrder.getVoucherId())
-                            .update();
-
-                    //消息处理成功，发送ACK
-                    stringRedisTemplate.opsForStream().acknowledge("stream.orders", "g1", record.getId());
-
-
-                } catch (Exception e) {
-                    //消息处理异常，从pending队列中获取消息并尝试重新解析
-                    log.error("下单异常");
-                    e.printStackTrace();
-                    //handlePendingList();
-                }
-            }
+    /**
+     * 批量保存订单，由下单消息消费者调用，重复投递的消息可以安全地再次处理
+     * 按优惠券分组写入，已存在的订单（订单id或一人一单唯一索引冲突）被忽略，
+     * 库存只按实际写入的行数扣减，合并为一条 stock = stock - k；
+     * 按优惠券id顺序写入和更新，多个消费者并发时加锁顺序一致
+     * @param orders 下单消息解析出的订单
+     */
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> orders) {
+        if (orders.isEmpty()) {
+            return;
         }
-
-        private void handlePendingList() {
-            while (true){
-                try {
-                    //从pending队列中获取消息
-                    List<MapRecord<String, Object, Object>> read = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create("stream.orders", ReadOffset.from("0"))
-                    );
-                    if(read == null || read.isEmpty()){
-                        //没有消息，直接开启下一轮循环
-                        break;
-                    }
-
-                    //有消息，开始解析消息
-                    MapRecord<String, Object, Object> record = read.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), false);
-                    save(voucherOrder);
-
-                    seckillVoucherService.update()
-                            .setSql("stock = stock - 1")
-                            .eq("voucher_id", voucherOrder.getVoucherId())
-                            .update();
-
-                    //消息处理成功，发送ACK
-                    stringRedisTemplate.opsForStream().acknowledge("stream.orders", "g1", record.getId());
-
-
-                } catch (Exception e) {
-                    log.error("pending队列消息处理异常");
-                }
+        Map<Long, List<VoucherOrder>> ordersOfVoucher = orders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, TreeMap::new, Collectors.toList()));
+        ordersOfVoucher.forEach((voucherId, voucherOrders) -> {
+            int inserted = getBaseMapper().insertBatchSkipDuplicates(voucherOrders);
+            if (inserted < voucherOrders.size()) {
+                log.warn("忽略重复的订单，优惠券id：{}，重复数：{}", voucherId, voucherOrders.size() - inserted);
             }
-        }
+            if (inserted > 0) {
+                seckillVoucherService.update()
+                        .setSql("stock = stock - " + inserted)
+                        .eq("voucher_id", voucherId)
+                        .update();
+            }
+        });
     }
 
     /**
@@ -159,20 +110,52 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      * @return
      */
     public Result placeVoucherOrder(Long voucherId) {
+        //本节点已知售罄，直接拒绝，不再生成订单id、执行脚本
+        if(soldOutRegistry.isSoldOut(voucherId)){
+            return Result.fail("当前已售罄！");
+        }
         Long userId = UserHolder.getUser().getId();
         Long orderId = redisIdWorker.nextId("order");
 
-        //在Lua脚本中判断下单资格 + 发送下单消息
-        Long result = stringRedisTemplate.execute(
-                SECKILL_QUALIFICATION_CHECK,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), orderId.toString());
-        if(result == null){
-            return Result.fail("下单失败！");
+        //在Lua脚本中判断下单资格（秒杀时段、库存、一人一单） + 发送下单消息
+        //分片的券从用户所在分片开始，该分片售罄时依次尝试后面的分片，每次脚本只操作一个分片的key
+        int shards = seckillStockManager.shardsOf(voucherId);
+        int home = SeckillStockManager.homeShard(userId, shards);
+        long r = 1L;
+        int shard = home;
+        for(int i = 0; i < shards && r == 1L; i++){
+            shard = (home + i) % shards;
+            Long result = stringRedisTemplate.execute(
+                    SECKILL_QUALIFICATION_CHECK,
+                    Arrays.asList(SeckillStockManager.stockKey(voucherId, shard, shards),
+                            SeckillStockManager.orderKey(voucherId, shard, shards)),
+                    voucherId.toString(), userId.toString(), orderId.toString());
+            if(result == null){
+                return Result.fail("下单失败！");
+            }
+            r = result;
+        }
+        if(r == 0L && shard != home){
+            //在其他分片购买成功，同时记入用户所在分片，该分片补充库存后也不能再次下单
+            seckillStockManager.markBuyer(voucherId, home, shards, userId);
+        }
+        if(r == 1L){
+            //只有库存key存在且所有分片都已扣完才是售罄，标记并广播
+            soldOutRegistry.markSoldOut(voucherId);
+            return Result.fail("当前已售罄！");
+        }
+        if(r == 5L){
+            //库存key不存在，不标记售罄，避免一次请求让所有节点误判
+            return Result.fail("秒杀券不存在或尚未开放！");
+        }
+        if(r == 3L){
+            return Result.fail("秒杀尚未开始！");
+        }
+        if(r == 4L){
+            return Result.fail("秒杀已经结束！");
         }
-        long r = result.longValue();
         if(r != 0L){
-            return Result.fail(r == 1L ? "当前已售罄！" : "不允许重复下单！");
+            return Result.fail("不允许重复下单！");
         }
 //        VoucherOrder voucherOrder = new VoucherOrder();
 //        voucherOrder.setId(orderId);
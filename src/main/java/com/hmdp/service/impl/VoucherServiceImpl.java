@@ -7,10 +7,17 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.cache.CacheEvict;
+import com.hmdp.utils.cache.CacheStrategy;
+import com.hmdp.utils.cache.Cached;
 import com.hmdp.utils.constant.RedisConstants;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.seckill.SeckillStockManager;
+import com.hmdp.utils.seckill.SoldOutRegistry;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
@@ -30,18 +37,37 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SeckillStockManager seckillStockManager;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        IVoucherService proxy = (IVoucherService) AopContext.currentProxy();
+        List<Voucher> vouchers = proxy.queryVoucherListOfShop(shopId);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    @Cached(prefix = RedisConstants.CACHE_SHOP_VOUCHER_KEY, key = "#shopId",
+            strategy = CacheStrategy.STALE_WHILE_REVALIDATE,
+            ttl = RedisConstants.CACHE_SHOP_VOUCHER_TTL, hardTtl = RedisConstants.CACHE_SHOP_VOUCHER_HARD_TTL)
+    public List<Voucher> queryVoucherListOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @CacheEvict(prefix = RedisConstants.CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+    }
+
     @Override
     @Transactional
+    @CacheEvict(prefix = RedisConstants.CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -55,8 +81,37 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
 
-        //保存优惠券信息到Redis
-        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + voucherId,
-                stock.toString());
+        //事务提交后再保存秒杀时段和库存到Redis（按配置拆分库存），回滚时Redis中不会留下数据库中不存在的秒杀券
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                seckillStockManager.initStock(seckillVoucher);
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public Result replenishSeckillStock(Long voucherId, Integer amount) {
+        if (voucherId == null || amount == null || amount <= 0) {
+            return Result.fail("补充数量必须大于0！");
+        }
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + amount)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return Result.fail("秒杀券不存在！");
+        }
+        //事务提交后再修改Redis库存，提交失败时Redis中的库存不能多于数据库
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                seckillStockManager.addStock(voucherId, amount);
+                //库存写入Redis后再清除标记，避免其他节点清除后立即被脚本重新标记为售罄
+                soldOutRegistry.clear(voucherId);
+            }
+        });
+        return Result.ok();
     }
 }
@@ -1,31 +1,136 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
+import cn.hutool.core.util.TypeUtil;
 import cn.hutool.json.JSONUtil;
+import com.hmdp.utils.cache.CacheEnvelope;
+import com.hmdp.utils.cache.CacheMetrics;
+import com.hmdp.utils.cache.CacheRebuildScheduler;
+import com.hmdp.utils.cache.CacheSerializer;
+import com.hmdp.utils.cache.CacheTtlPolicy;
+import com.hmdp.utils.cache.CacheValue;
+import com.hmdp.utils.cache.EarlyRefreshPolicy;
+import com.hmdp.utils.cache.ExistenceFilter;
+import com.hmdp.utils.cache.HotKeyDetector;
+import com.hmdp.utils.cache.LocalCache;
+import com.hmdp.utils.cache.NegativeCache;
+import com.hmdp.utils.cache.SingleFlight;
 import com.hmdp.utils.constant.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 public class CacheClient {
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    private final LocalCache localCache;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate){
+    private final CacheSerializer cacheSerializer;
+
+    private final EarlyRefreshPolicy earlyRefreshPolicy;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final CacheRebuildScheduler rebuildScheduler;
+
+    private final CacheTtlPolicy ttlPolicy;
+
+    private final NegativeCache negativeCache;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    //key前缀 -> 存在性过滤器
+    private final Map<String, ExistenceFilter> existenceFilters = new ConcurrentHashMap<>();
+
+    //数据类型 -> 版本号获取函数
+    private final Map<Class<?>, ToLongFunction<Object>> versionResolvers = new ConcurrentHashMap<>();
+
+    private static final DefaultRedisScript<Long> CACHE_MIGRATE_SCRIPT;
+
+    private static final DefaultRedisScript<Long> CACHE_CAS_SET_SCRIPT;
+
+    private static final DefaultRedisScript<Long> CACHE_DELETE_CORRUPT_SCRIPT;
+
+    static {
+        CACHE_MIGRATE_SCRIPT = new DefaultRedisScript<>();
+        CACHE_MIGRATE_SCRIPT.setLocation(new ClassPathResource("cache_migrate.lua"));
+        CACHE_MIGRATE_SCRIPT.setResultType(Long.class);
+
+        CACHE_CAS_SET_SCRIPT = new DefaultRedisScript<>();
+        CACHE_CAS_SET_SCRIPT.setLocation(new ClassPathResource("cache_cas_set.lua"));
+        CACHE_CAS_SET_SCRIPT.setResultType(Long.class);
+
+        CACHE_DELETE_CORRUPT_SCRIPT = new DefaultRedisScript<>();
+        CACHE_DELETE_CORRUPT_SCRIPT.setLocation(new ClassPathResource("cache_delete_corrupt.lua"));
+        CACHE_DELETE_CORRUPT_SCRIPT.setResultType(Long.class);
+    }
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, LocalCache localCache, CacheSerializer cacheSerializer,
+                       EarlyRefreshPolicy earlyRefreshPolicy, CacheMetrics cacheMetrics,
+                       HotKeyDetector hotKeyDetector, CacheRebuildScheduler rebuildScheduler,
+                       CacheTtlPolicy ttlPolicy, NegativeCache negativeCache){
         this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+        this.cacheSerializer = cacheSerializer;
+        this.earlyRefreshPolicy = earlyRefreshPolicy;
+        this.cacheMetrics = cacheMetrics;
+        this.hotKeyDetector = hotKeyDetector;
+        this.rebuildScheduler = rebuildScheduler;
+        this.ttlPolicy = ttlPolicy;
+        this.negativeCache = negativeCache;
     }
 
     /**
-     * 在Redis中插入新key，带TTL过期时间
+     * 为某一类缓存注册存在性过滤器，查询Redis和数据库前先经过滤器判断
+     * @param redisKeyPrefix redis中存储的key值前缀
+     * @param filter
+     */
+    public void registerExistenceFilter(String redisKeyPrefix, ExistenceFilter filter){
+        existenceFilters.put(redisKeyPrefix, filter);
+    }
+
+    /**
+     * 为某一类数据注册版本号获取函数，写入缓存时携带版本号，Redis中已有更新的版本时拒绝覆盖
+     * 版本号需随数据更新单调递增，如更新时间戳；未注册的类型版本号为0，总是允许覆盖
+     * 版本号相同时，重建不会覆盖尚未逻辑过期的写穿数据，见{@link #writeThrough}
+     * @param type 数据类型
+     * @param versionGetter
+     * @param <T>
+     */
+    public <T> void registerVersionResolver(Class<T> type, ToLongFunction<? super T> versionGetter){
+        versionResolvers.put(type, value -> versionGetter.applyAsLong(type.cast(value)));
+    }
+
+    /**
+     * 在Redis中插入新key，带TTL过期时间，实际过期时间由过期时间策略计算
      * @param key
      * @param t
      * @param ttl
@@ -33,7 +138,10 @@ public class CacheClient {
      * @param <T>
      */
     public <T> void set(String key, T t, long ttl, TimeUnit timeUnit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(t), ttl, timeUnit);
+        long version = versionOf(t, false);
+        casSet(key, cacheSerializer.serialize(key, t, -1L, 0L, version), version, false,
+                ttlPolicy.ttlMillis(key, ttl, timeUnit), TimeUnit.MILLISECONDS);
+        localCache.invalidate(key);
     }
 
     /**
@@ -45,17 +153,83 @@ public class CacheClient {
      * @param <T>
      */
     public <T> void setWithLogicalExpire(String key, T t, long logicalTtl, TimeUnit timeUnit){
-        RedisData redisData = new RedisData();
-        redisData.setData(t);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(logicalTtl)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setWithLogicalExpire(key, t, logicalTtl, timeUnit, 0L);
+    }
+
+    /**
+     * 向Redis中插入新key，带逻辑过期时间，同时记录本次重建耗时，用于过期前的概率提前刷新
+     * 实际逻辑过期时间由过期时间策略计算
+     * @param key
+     * @param t
+     * @param logicalTtl
+     * @param timeUnit
+     * @param rebuildMillis 重建耗时（毫秒）
+     * @param <T>
+     */
+    public <T> void setWithLogicalExpire(String key, T t, long logicalTtl, TimeUnit timeUnit, long rebuildMillis){
+        setWithLogicalExpire(key, t, logicalTtl, timeUnit, rebuildMillis, false);
+    }
+
+    /**
+     * 数据更新后写穿缓存，带逻辑过期时间，数据需在更新提交后从数据库重新读取
+     * 版本号只精确到秒时，同一秒内开始的重建可能读到更新前的数据，且与写穿的数据版本号相同；
+     * 写穿的数据在逻辑过期前不会被同一版本号的重建覆盖，逻辑过期后照常由重建续期
+     * @param key
+     * @param t
+     * @param logicalTtl
+     * @param timeUnit
+     * @param <T>
+     */
+    public <T> void writeThrough(String key, T t, long logicalTtl, TimeUnit timeUnit){
+        setWithLogicalExpire(key, t, logicalTtl, timeUnit, 0L, true);
+    }
+
+    private <T> void setWithLogicalExpire(String key, T t, long logicalTtl, TimeUnit timeUnit, long rebuildMillis,
+                                          boolean writeThrough){
+        long expireAt = System.currentTimeMillis() + ttlPolicy.ttlMillis(key, logicalTtl, timeUnit);
+        long version = versionOf(t, writeThrough);
+        casSet(key, cacheSerializer.serialize(key, t, expireAt, rebuildMillis, version), version, writeThrough,
+                -1L, timeUnit);
+        localCache.invalidate(key);
+    }
+
+    /**
+     * 向Redis中插入新key，同时带软过期时间（逻辑过期）和硬过期时间（物理过期）
+     * 实际软过期时间由过期时间策略计算，硬过期时间在其基础上保持与调用方相同的间隔
+     * @param key
+     * @param t
+     * @param softTtl 软过期时间，过期后仍返回旧数据并触发后台刷新
+     * @param hardTtl 硬过期时间，需大于软过期时间，过期后key被删除
+     * @param timeUnit
+     * @param rebuildMillis 重建耗时（毫秒）
+     * @param <T>
+     */
+    public <T> void setWithSoftExpire(String key, T t, long softTtl, long hardTtl, TimeUnit timeUnit, long rebuildMillis){
+        if(hardTtl <= softTtl){
+            throw new IllegalArgumentException("硬过期时间需大于软过期时间");
+        }
+        long softMillis = ttlPolicy.ttlMillis(key, softTtl, timeUnit);
+        long expireAt = System.currentTimeMillis() + softMillis;
+        long version = versionOf(t, false);
+        casSet(key, cacheSerializer.serialize(key, t, expireAt, rebuildMillis, version), version, false,
+                softMillis + timeUnit.toMillis(hardTtl - softTtl), TimeUnit.MILLISECONDS);
+        localCache.invalidate(key);
+    }
+
+    /**
+     * 删除缓存，同时广播各节点删除本地缓存
+     * @param key
+     */
+    public void delete(String key){
+        stringRedisTemplate.delete(key);
+        localCache.invalidate(key);
     }
 
     /**
      * 查询数据方法，使用缓存空值方法解决缓存穿透问题
      * @param redisKeyPrefix redis中存储的key值前缀
      * @param dbId 所查询数据在数据库中的id
-     * @param entity 所查询数据在对应的实体类型
+     * @param entity 所查询数据的类型，可以是带泛型的类型，如List<Voucher>
      * @param dbFallback 数据库查询处理函数
      * @param ttl
      * @param timeUnit
@@ -64,35 +238,78 @@ public class CacheClient {
      * @param <R> 所查询数据对应的实体类型
      */
     public <ID,R> R queryWithPassThrough(
-            String redisKeyPrefix, ID dbId, Class<R> entity, Function<ID, R> dbFallback, long ttl, TimeUnit timeUnit){
+            String redisKeyPrefix, ID dbId, Type entity, Function<ID, R> dbFallback, long ttl, TimeUnit timeUnit){
         String redisKey = redisKeyPrefix + dbId.toString();
-        //查询Redis
-        String resJson = stringRedisTemplate.opsForValue().get(redisKey);
+        hotKeyDetector.record(redisKey);
+        //查询本地缓存（含热点区）
+        LocalCache.Entry localEntry = localCache.get(redisKey, TypeUtil.getClass(entity));
+        if(localEntry != null){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.LOCAL_HIT);
+            return cast(localEntry.getValue());
+        }
+        //存在性过滤器判断一定不存在，直接返回
+        ExistenceFilter filter = existenceFilters.get(redisKeyPrefix);
+        if(filter != null && !filter.mightContain(dbId)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.REJECTED);
+            return null;
+        }
+        //查询Redis，同时查询空值记录
+        byte[] raw = getRawOrNegative(redisKeyPrefix, dbId);
         //缓存命中且非空值，直接返回
-        if(!StrUtil.isBlank(resJson)){
-            return JSONUtil.toBean(resJson, entity);
+        if(raw != null && raw.length > 0){
+            CacheValue cacheValue = decode(redisKey, raw, entity, false);
+            if(cacheValue != null){
+                cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.HIT);
+                R r = cast(cacheValue.getValue());
+                localCache.put(redisKey, r, -1L, raw.length);
+                promoteIfHot(redisKey, r, -1L, 0L);
+                return r;
+            }
+            //数据已损坏并已删除，按未命中处理
+            raw = null;
         }
         //缓存命中空值
-        if(resJson != null){
+        if(raw != null){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.NULL_HIT);
             return null;
         }
+        cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.MISS);
 
-        //缓存不命中：
-        //查询数据库
-        R r = dbFallback.apply(dbId);
-        //数据库中无对应结果，缓存空值并返回
-        if(r == null){
-            stringRedisTemplate.opsForValue().set(redisKey, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.SECONDS);
-            return null;
-        }
+        //缓存不命中：同一个key只允许一个线程查询数据库，其余线程等待其结果
+        return singleFlight.execute(redisKey, () -> {
+            //二次检查，其他线程或节点可能已完成缓存写入
+            byte[] current = getRawOrNegative(redisKeyPrefix, dbId);
+            if(current != null){
+                if(current.length == 0){
+                    return null;
+                }
+                CacheValue cacheValue = decode(redisKey, current, entity, false);
+                if(cacheValue != null){
+                    return cast(cacheValue.getValue());
+                }
+            }
+            //查询数据库
+            long start = System.nanoTime();
+            R r = loadFromDb(redisKeyPrefix, dbId, dbFallback);
+            //数据库中无对应结果，缓存空值并返回
+            if(r == null){
+                if(filter != null){
+                    filter.recordFalsePositive();
+                }
+                setNullValue(redisKeyPrefix, dbId);
+                return null;
+            }
 
-        //有对应结果
-        this.set(redisKey, r, ttl, timeUnit);
-        return r;
+            //有对应结果
+            this.set(redisKey, r, ttl, timeUnit);
+            cacheMetrics.recordRebuild(redisKeyPrefix, System.nanoTime() - start);
+            return r;
+        });
     }
 
     /**
-     * 查询数据方法，使用互斥锁+逻辑过期解决缓存击穿问题（需要缓存预热）
+     * 查询数据方法，使用互斥锁+逻辑过期解决缓存击穿问题
+     * 未预热的key在首次访问时懒加载，同一节点内同一个key只会查询一次数据库
      * @param redisKeyPrefix
      * @param dbId
      * @param entity
@@ -104,47 +321,660 @@ public class CacheClient {
      * @param <ID>
      */
     public <R, ID> R queryWithLogicalExpire(
-            String redisKeyPrefix, ID dbId, Class<R> entity, Function<ID, R> dbFallback, long ttl, TimeUnit timeUnit){
+            String redisKeyPrefix, ID dbId, Type entity, Function<ID, R> dbFallback, long ttl, TimeUnit timeUnit){
         String redisKey = redisKeyPrefix + dbId.toString();
-        String resJson = stringRedisTemplate.opsForValue().get(redisKey);
-        //缓存未命中：
-        if(StrUtil.isBlank(resJson)){
+        hotKeyDetector.record(redisKey);
+        long now = System.currentTimeMillis();
+        //本地缓存（含热点区）命中且未过期，直接返回，临近过期时按概率提前触发后台重建
+        LocalCache.Entry localEntry = localCache.get(redisKey, TypeUtil.getClass(entity));
+        if(localEntry != null && !localEntry.isExpired(now)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.LOCAL_HIT);
+            if(earlyRefreshPolicy.shouldRebuild(localEntry.getExpireAt(), localEntry.getDelta(), now)){
+                rebuildWithLogicalExpire(redisKeyPrefix, dbId, dbFallback, ttl, -1L, timeUnit, localEntry.getExpireAt());
+            }
+            return cast(localEntry.getValue());
+        }
+        //存在性过滤器判断一定不存在，直接返回
+        ExistenceFilter filter = existenceFilters.get(redisKeyPrefix);
+        if(filter != null && !filter.mightContain(dbId)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.REJECTED);
+            return null;
+        }
+        byte[] raw = getRawOrNegative(redisKeyPrefix, dbId);
+        //命中空值：
+        if(raw != null && raw.length == 0){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.NULL_HIT);
             return null;
         }
+        //转换成Bean，数据已损坏时返回null
+        CacheValue cacheValue = raw == null ? null : decode(redisKey, raw, entity, true);
+        //缓存未命中：懒加载
+        if(cacheValue == null){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.MISS);
+            return singleFlight.execute(redisKey,
+                    () -> loadWithLogicalExpire(redisKeyPrefix, dbId, entity, dbFallback, ttl, -1L, timeUnit, filter));
+        }
         //命中：
-        //转换成Bean
-        RedisData redisData = JSONUtil.toBean(resJson, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), entity);
-        //判断是否过期：
-        if(redisData.getExpireTime().isAfter(LocalDateTime.now())){
-            //未过期，返回数据
-            return r;
+        R r = cast(cacheValue.getValue());
+        //未过期，写入本地缓存
+        if(!cacheValue.isExpired(now)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.HIT);
+            localCache.put(redisKey, r, cacheValue.getExpireAt(), cacheValue.getDelta(), raw.length);
+            promoteIfHot(redisKey, r, cacheValue.getExpireAt(), cacheValue.getDelta());
+        } else {
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.STALE);
         }
-        //已过期,进行缓存重建：
-        String lockKey = RedisConstants.LOCK_SHOP_KEY + dbId.toString();
-        //尝试获取锁：
-        if(tryLock(lockKey)){
-            if(redisData.getExpireTime().isAfter(LocalDateTime.now())){
-                return r;
+        //已过期或命中提前刷新，进行缓存重建
+        if(earlyRefreshPolicy.shouldRebuild(cacheValue.getExpireAt(), cacheValue.getDelta(), now)){
+            rebuildWithLogicalExpire(redisKeyPrefix, dbId, dbFallback, ttl, -1L, timeUnit, cacheValue.getExpireAt());
+        }
+        //返回数据，已过期时返回的是旧数据
+        return r;
+    }
+
+    /**
+     * 查询数据方法，软过期+硬过期（stale-while-revalidate），无需预热
+     * 1. 未超过软过期时间：直接返回
+     * 2. 超过软过期时间、未超过硬过期时间：立即返回旧数据，同时触发一次后台刷新（本节点按key去重，各节点间互斥）
+     * 3. 超过硬过期时间：key已被删除，同步查询数据库，同一节点内同一个key只会查询一次
+     * 长期无人访问的key在硬过期后被删除，不会像逻辑过期那样常驻Redis
+     * @param redisKeyPrefix redis中存储的key值前缀
+     * @param dbId 数据库id
+     * @param entity 所查询数据的类型，可以是带泛型的类型，如List<Voucher>
+     * @param dbFallback 数据库查询处理函数
+     * @param softTtl 软过期时间
+     * @param hardTtl 硬过期时间，需大于软过期时间
+     * @param timeUnit
+     * @return
+     * @param <R> 所查询数据对应的实体类型
+     * @param <ID> 数据库id的数据类型
+     */
+    public <R, ID> R queryWithStaleWhileRevalidate(String redisKeyPrefix, ID dbId, Type entity,
+                                                   Function<ID, R> dbFallback, long softTtl, long hardTtl, TimeUnit timeUnit){
+        String redisKey = redisKeyPrefix + dbId.toString();
+        hotKeyDetector.record(redisKey);
+        long now = System.currentTimeMillis();
+        //本地缓存（含热点区）中的数据只在软过期前使用，软过期后以Redis为准
+        LocalCache.Entry localEntry = localCache.get(redisKey, TypeUtil.getClass(entity));
+        if(localEntry != null && !localEntry.isExpired(now)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.LOCAL_HIT);
+            if(earlyRefreshPolicy.shouldRebuild(localEntry.getExpireAt(), localEntry.getDelta(), now)){
+                rebuildWithLogicalExpire(redisKeyPrefix, dbId, dbFallback, softTtl, hardTtl, timeUnit, localEntry.getExpireAt());
+            }
+            return cast(localEntry.getValue());
+        }
+        //存在性过滤器判断一定不存在，直接返回
+        ExistenceFilter filter = existenceFilters.get(redisKeyPrefix);
+        if(filter != null && !filter.mightContain(dbId)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.REJECTED);
+            return null;
+        }
+        byte[] raw = getRawOrNegative(redisKeyPrefix, dbId);
+        //命中空值
+        if(raw != null && raw.length == 0){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.NULL_HIT);
+            return null;
+        }
+        CacheValue cacheValue = raw == null ? null : decode(redisKey, raw, entity, true);
+        //未命中、已硬过期或数据已损坏：同步加载
+        if(cacheValue == null){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.MISS);
+            return singleFlight.execute(redisKey,
+                    () -> loadWithLogicalExpire(redisKeyPrefix, dbId, entity, dbFallback, softTtl, hardTtl, timeUnit, filter));
+        }
+        R r = cast(cacheValue.getValue());
+        if(!cacheValue.isExpired(now)){
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.HIT);
+            localCache.put(redisKey, r, cacheValue.getExpireAt(), cacheValue.getDelta(), raw.length);
+            promoteIfHot(redisKey, r, cacheValue.getExpireAt(), cacheValue.getDelta());
+        } else {
+            cacheMetrics.recordGet(redisKeyPrefix, CacheMetrics.STALE);
+        }
+        //已软过期或命中提前刷新，后台刷新，本次返回旧数据
+        if(earlyRefreshPolicy.shouldRebuild(cacheValue.getExpireAt(), cacheValue.getDelta(), now)){
+            rebuildWithLogicalExpire(redisKeyPrefix, dbId, dbFallback, softTtl, hardTtl, timeUnit, cacheValue.getExpireAt());
+        }
+        return r;
+    }
+
+    /**
+     * 提交后台重建逻辑过期缓存，本节点内同一个key同时只会有一个重建任务
+     * 重建任务中获取分布式互斥锁，获取失败说明其他节点正在重建，直接放弃；重建完成后才释放锁
+     * @param hardTtl 硬过期时间，小于等于0表示只有逻辑过期
+     * @param seenExpireAt 调用方读到的逻辑过期时间，Redis中的过期时间已晚于它说明其他线程已完成重建
+     */
+    private <R, ID> void rebuildWithLogicalExpire(String redisKeyPrefix, ID dbId, Function<ID, R> dbFallback,
+                                                  long ttl, long hardTtl, TimeUnit timeUnit, long seenExpireAt){
+        String redisKey = redisKeyPrefix + dbId.toString();
+        rebuildScheduler.submit(redisKey, hotKeyDetector.isHot(redisKey), () -> {
+            String lockKey = RedisConstants.LOCK_KEY_PREFIX + redisKey;
+            //尝试获取锁：
+            if(!tryLock(lockKey)){
+                cacheMetrics.recordLockContention(redisKeyPrefix);
+                return;
             }
-            //获取成功，进行缓存重建
             try {
-                CACHE_REBUILD_EXECUTOR.submit(() -> {
-                    R r1 = dbFallback.apply(dbId);
-                    this.setWithLogicalExpire(redisKey, r1, ttl, timeUnit);
-                });
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                //再次判断，其他节点可能已完成重建
+                if(readExpireAt(redisKey) > seenExpireAt){
+                    return;
+                }
+                //获取成功，进行缓存重建
+                long start = System.nanoTime();
+                R r1 = loadFromDb(redisKeyPrefix, dbId, dbFallback);
+                if(r1 == null){
+                    //数据已被删除，写入空值，过期后重新懒加载
+                    setNullValue(redisKeyPrefix, dbId);
+                    localCache.invalidate(redisKey);
+                    return;
+                }
+                long cost = System.nanoTime() - start;
+                setWithExpire(redisKey, r1, ttl, hardTtl, timeUnit, TimeUnit.NANOSECONDS.toMillis(cost));
+                cacheMetrics.recordRebuild(redisKeyPrefix, System.nanoTime() - start);
             } finally {
                 unlock(lockKey);
             }
+        });
+    }
+
+    /**
+     * 逻辑过期key的懒加载：查询数据库并写入带逻辑过期时间的缓存，数据库中不存在时缓存空值
+     * 调用方需保证同一节点内同一个key只有一个线程执行
+     * @param hardTtl 硬过期时间，小于等于0表示只有逻辑过期
+     */
+    private <R, ID> R loadWithLogicalExpire(String redisKeyPrefix, ID dbId, Type entity, Function<ID, R> dbFallback,
+                                            long ttl, long hardTtl, TimeUnit timeUnit, ExistenceFilter filter){
+        String redisKey = redisKeyPrefix + dbId.toString();
+        //二次检查，其他节点可能已完成加载
+        byte[] raw = getRawOrNegative(redisKeyPrefix, dbId);
+        if(raw != null){
+            if(raw.length == 0){
+                return null;
+            }
+            CacheValue cacheValue = decode(redisKey, raw, entity, true);
+            if(cacheValue != null){
+                return cast(cacheValue.getValue());
+            }
+        }
+        long start = System.nanoTime();
+        R r = loadFromDb(redisKeyPrefix, dbId, dbFallback);
+        if(r == null){
+            if(filter != null){
+                filter.recordFalsePositive();
+            }
+            setNullValue(redisKeyPrefix, dbId);
+            return null;
         }
-        //返回过期的信息
+        long cost = System.nanoTime() - start;
+        setWithExpire(redisKey, r, ttl, hardTtl, timeUnit, TimeUnit.NANOSECONDS.toMillis(cost));
+        cacheMetrics.recordRebuild(redisKeyPrefix, System.nanoTime() - start);
         return r;
     }
 
+    /**
+     * 有硬过期时间时同时设置软、硬过期时间，否则只设置逻辑过期时间
+     */
+    private <T> void setWithExpire(String key, T t, long ttl, long hardTtl, TimeUnit timeUnit, long rebuildMillis){
+        if(hardTtl > 0){
+            setWithSoftExpire(key, t, ttl, hardTtl, timeUnit, rebuildMillis);
+        } else {
+            setWithLogicalExpire(key, t, ttl, timeUnit, rebuildMillis);
+        }
+    }
+
+    /**
+     * 热点key写入本地热点区，即使未开启一级缓存，热点key的读请求也不会全部打到Redis
+     */
+    private void promoteIfHot(String redisKey, Object value, long expireAt, long delta){
+        if(hotKeyDetector.isHot(redisKey)){
+            localCache.putHot(redisKey, value, expireAt, delta);
+        }
+    }
+
+    /**
+     * 查询数据库，失败时记录重建失败次数
+     */
+    private <R, ID> R loadFromDb(String redisKeyPrefix, ID dbId, Function<ID, R> dbFallback){
+        try {
+            return dbFallback.apply(dbId);
+        } catch (RuntimeException e) {
+            cacheMetrics.recordRebuildFailure(redisKeyPrefix);
+            log.error("缓存重建查询数据库失败，key: {}", redisKeyPrefix + dbId, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量写入带逻辑过期时间的缓存，使用管道一次往返完成
+     * @param values redis中的key -> 数据，数据为null时写入空值
+     * @param logicalTtl
+     * @param timeUnit
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, long logicalTtl, TimeUnit timeUnit){
+        setBatchWithLogicalExpire(values, logicalTtl, timeUnit, 0L);
+    }
+
+    /**
+     * 批量写入带逻辑过期时间的缓存，使用管道一次往返完成，同时记录本批数据的重建耗时
+     * @param values redis中的key -> 数据，数据为null时写入空值
+     * @param logicalTtl
+     * @param timeUnit
+     * @param rebuildMillis 重建耗时（毫秒）
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, long logicalTtl, TimeUnit timeUnit, long rebuildMillis){
+        if(values.isEmpty()){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        //每个元素为 key, 数据, 版本号, 物理过期时间, 是否写穿, 当前时间，与cache_cas_set.lua的参数一致
+        List<byte[][]> casArgs = new ArrayList<>(values.size());
+        //空值key -> 过期时间
+        Map<byte[], Expiration> nullKeys = new LinkedHashMap<>();
+        byte[] noTtl = rawKey("-1");
+        byte[] rebuild = rawKey("0");
+        byte[] rawNow = rawKey(String.valueOf(now));
+        values.forEach((key, value) -> {
+            if(value == null){
+                nullKeys.put(rawKey(key), Expiration.milliseconds(ttlPolicy.nullTtlMillis(key)));
+            } else {
+                //每个key单独计算过期时间，同一批写入的key不会同时过期
+                long expireAt = now + ttlPolicy.ttlMillis(key, logicalTtl, timeUnit);
+                long version = versionOf(value, false);
+                casArgs.add(new byte[][]{rawKey(key), cacheSerializer.serialize(key, value, expireAt, rebuildMillis, version),
+                        rawKey(String.valueOf(version)), noTtl, rebuild, rawNow});
+            }
+        });
+        byte[] nullValue = new byte[0];
+        byte[] script = CACHE_CAS_SET_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        String sha = CACHE_CAS_SET_SCRIPT.getSha1();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            //同一管道内先加载脚本，保证后续EVALSHA不会因脚本缓存被清空而失败
+            if(!casArgs.isEmpty()){
+                connection.scriptingCommands().scriptLoad(script);
+            }
+            casArgs.forEach(args -> connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1, args));
+            nullKeys.forEach((rawKey, nullTtl) -> connection.stringCommands().set(
+                    rawKey, nullValue, nullTtl, RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+        localCache.invalidateAll(values.keySet());
+    }
+
+    /**
+     * 批量查询数据，逻辑过期策略
+     * 本地缓存 -> 一次MGET -> 未命中的数据一次批量查库 -> 管道批量回写，无论批量多大往返次数都是常数
+     * 已过期的数据先返回旧值，在后台批量重建
+     * @param redisKeyPrefix redis中存储的key值前缀
+     * @param dbIds 数据库id集合
+     * @param entity 数据类型
+     * @param dbBatchFallback 数据库批量查询函数
+     * @param idGetter 从数据中取出id，用于和查询结果对应
+     * @param ttl 逻辑过期时间
+     * @param timeUnit
+     * @return id -> 数据，按dbIds的顺序排列，不存在的id不在结果中
+     * @param <ID>
+     * @param <R>
+     */
+    public <ID, R> Map<ID, R> queryBatchWithLogicalExpire(
+            String redisKeyPrefix, Collection<ID> dbIds, Class<R> entity,
+            Function<Collection<ID>, List<R>> dbBatchFallback, Function<R, ID> idGetter, long ttl, TimeUnit timeUnit){
+        Map<ID, R> result = new LinkedHashMap<>(dbIds.size());
+        long now = System.currentTimeMillis();
+        ExistenceFilter filter = existenceFilters.get(redisKeyPrefix);
+
+        //本地缓存 + 存在性过滤器
+        int localHits = 0;
+        int rejected = 0;
+        List<ID> remoteIds = new ArrayList<>();
+        //已过期或命中提前刷新，需要后台重建的id
+        List<ID> expiredIds = new ArrayList<>();
+        for(ID dbId : dbIds){
+            hotKeyDetector.record(redisKeyPrefix + dbId);
+            LocalCache.Entry localEntry = localCache.get(redisKeyPrefix + dbId, entity);
+            if(localEntry != null && !localEntry.isExpired(now)){
+                localHits++;
+                result.put(dbId, entity.cast(localEntry.getValue()));
+                if(earlyRefreshPolicy.shouldRebuild(localEntry.getExpireAt(), localEntry.getDelta(), now)){
+                    expiredIds.add(dbId);
+                }
+            } else if(filter == null || filter.mightContain(dbId)){
+                //先占位，保证结果顺序与传入顺序一致
+                result.put(dbId, null);
+                remoteIds.add(dbId);
+            } else {
+                rejected++;
+            }
+        }
+        cacheMetrics.recordGets(redisKeyPrefix, CacheMetrics.LOCAL_HIT, localHits);
+        cacheMetrics.recordGets(redisKeyPrefix, CacheMetrics.REJECTED, rejected);
+        if(remoteIds.isEmpty()){
+            submitRebuildBatch(redisKeyPrefix, expiredIds, dbBatchFallback, idGetter, ttl, timeUnit);
+            return result;
+        }
+
+        //一次MGET查询Redis，同一管道内查询空值记录
+        byte[][] rawKeys = remoteIds.stream().map(id -> rawKey(redisKeyPrefix + id)).toArray(byte[][]::new);
+        List<Object> pipelined = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().mGet(rawKeys);
+            remoteIds.stream().filter(negativeCache::supports)
+                    .forEach(id -> negativeCache.contains(connection, redisKeyPrefix, id));
+            return null;
+        }, RedisSerializer.byteArray());
+        @SuppressWarnings("unchecked")
+        List<byte[]> raws = (List<byte[]>) pipelined.get(0);
+        int negativeIndex = 1;
+        List<ID> missIds = new ArrayList<>();
+        int hits = 0;
+        int nullHits = 0;
+        int stales = 0;
+        for(int i = 0; i < remoteIds.size(); i++){
+            ID dbId = remoteIds.get(i);
+            byte[] raw = raws == null ? null : raws.get(i);
+            boolean negative = negativeCache.supports(dbId) && Boolean.TRUE.equals(pipelined.get(negativeIndex++));
+            if(raw == null && !negative){
+                missIds.add(dbId);
+                continue;
+            }
+            if(raw == null){
+                //命中空值记录
+                nullHits++;
+                result.remove(dbId);
+                continue;
+            }
+            if(raw.length == 0){
+                //命中空值
+                nullHits++;
+                result.remove(dbId);
+                continue;
+            }
+            String redisKey = redisKeyPrefix + dbId;
+            CacheValue cacheValue = decode(redisKey, raw, entity, true);
+            if(cacheValue == null){
+                missIds.add(dbId);
+                continue;
+            }
+            R r = entity.cast(cacheValue.getValue());
+            result.put(dbId, r);
+            if(!cacheValue.isExpired(now)){
+                hits++;
+                localCache.put(redisKey, r, cacheValue.getExpireAt(), cacheValue.getDelta(), raw.length);
+                promoteIfHot(redisKey, r, cacheValue.getExpireAt(), cacheValue.getDelta());
+            } else {
+                stales++;
+            }
+            if(earlyRefreshPolicy.shouldRebuild(cacheValue.getExpireAt(), cacheValue.getDelta(), now)){
+                expiredIds.add(dbId);
+            }
+        }
+        cacheMetrics.recordGets(redisKeyPrefix, CacheMetrics.HIT, hits);
+        cacheMetrics.recordGets(redisKeyPrefix, CacheMetrics.NULL_HIT, nullHits);
+        cacheMetrics.recordGets(redisKeyPrefix, CacheMetrics.STALE, stales);
+        cacheMetrics.recordGets(redisKeyPrefix, CacheMetrics.MISS, missIds.size());
+
+        //未命中：一次批量查库，管道批量回写
+        if(!missIds.isEmpty()){
+            Map<ID, R> loaded = loadBatch(redisKeyPrefix, missIds, dbBatchFallback, idGetter, ttl, timeUnit);
+            for(ID dbId : missIds){
+                R r = loaded.get(dbId);
+                if(r == null){
+                    if(filter != null){
+                        filter.recordFalsePositive();
+                    }
+                    result.remove(dbId);
+                } else {
+                    result.put(dbId, r);
+                }
+            }
+        }
+
+        //已过期或命中提前刷新：后台批量重建
+        submitRebuildBatch(redisKeyPrefix, expiredIds, dbBatchFallback, idGetter, ttl, timeUnit);
+        return result;
+    }
+
+    /**
+     * 提交后台批量重建，已在本节点排队或重建中的key会被剔除
+     */
+    private <ID, R> void submitRebuildBatch(String redisKeyPrefix, List<ID> dbIds,
+                                            Function<Collection<ID>, List<R>> dbBatchFallback, Function<R, ID> idGetter,
+                                            long ttl, TimeUnit timeUnit){
+        if(dbIds.isEmpty()){
+            return;
+        }
+        Map<String, ID> items = new LinkedHashMap<>(dbIds.size());
+        boolean hot = false;
+        for(ID dbId : dbIds){
+            String redisKey = redisKeyPrefix + dbId;
+            items.put(redisKey, dbId);
+            hot |= hotKeyDetector.isHot(redisKey);
+        }
+        rebuildScheduler.submitBatch(items, hot,
+                ids -> rebuildBatch(redisKeyPrefix, ids, dbBatchFallback, idGetter, ttl, timeUnit));
+    }
+
+    /**
+     * 批量查库并回写缓存，数据库中不存在的id写入空值
+     */
+    private <ID, R> Map<ID, R> loadBatch(String redisKeyPrefix, List<ID> dbIds,
+                                         Function<Collection<ID>, List<R>> dbBatchFallback, Function<R, ID> idGetter,
+                                         long ttl, TimeUnit timeUnit){
+        Map<ID, R> loaded = new HashMap<>(dbIds.size());
+        long start = System.nanoTime();
+        List<R> rows;
+        try {
+            rows = dbBatchFallback.apply(dbIds);
+        } catch (RuntimeException e) {
+            cacheMetrics.recordRebuildFailure(redisKeyPrefix);
+            throw e;
+        }
+        for(R r : rows){
+            loaded.put(idGetter.apply(r), r);
+        }
+        Map<String, R> values = new LinkedHashMap<>(dbIds.size());
+        List<ID> negativeIds = new ArrayList<>();
+        for(ID dbId : dbIds){
+            R r = loaded.get(dbId);
+            if(r == null && negativeCache.supports(dbId)){
+                negativeIds.add(dbId);
+            } else {
+                values.put(redisKeyPrefix + dbId, r);
+            }
+        }
+        long cost = System.nanoTime() - start;
+        setBatchWithLogicalExpire(values, ttl, timeUnit, TimeUnit.NANOSECONDS.toMillis(cost));
+        setNullValues(redisKeyPrefix, negativeIds);
+        cacheMetrics.recordRebuild(redisKeyPrefix, System.nanoTime() - start);
+        return loaded;
+    }
+
+    /**
+     * 批量重建已过期的缓存：管道批量获取互斥锁，只重建获取到锁的key
+     */
+    private <ID, R> void rebuildBatch(String redisKeyPrefix, List<ID> dbIds,
+                                      Function<Collection<ID>, List<R>> dbBatchFallback, Function<R, ID> idGetter,
+                                      long ttl, TimeUnit timeUnit){
+        byte[] lockValue = rawKey("1");
+        Expiration lockTtl = Expiration.seconds(RedisConstants.LOCK_CACHE_REBUILD_TTL);
+        List<Object> lockResults = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for(ID dbId : dbIds){
+                connection.stringCommands().set(rawKey(RedisConstants.LOCK_KEY_PREFIX + redisKeyPrefix + dbId), lockValue,
+                        lockTtl, RedisStringCommands.SetOption.ifAbsent());
+            }
+            return null;
+        });
+        List<ID> lockedIds = new ArrayList<>();
+        for(int i = 0; i < dbIds.size(); i++){
+            if(BooleanUtil.isTrue((Boolean) lockResults.get(i))){
+                lockedIds.add(dbIds.get(i));
+            }
+        }
+        cacheMetrics.recordLockContention(redisKeyPrefix, dbIds.size() - lockedIds.size());
+        if(lockedIds.isEmpty()){
+            return;
+        }
+        try {
+            loadBatch(redisKeyPrefix, lockedIds, dbBatchFallback, idGetter, ttl, timeUnit);
+        } catch (Exception e) {
+            log.error("批量重建缓存失败，key前缀: {}", redisKeyPrefix, e);
+        } finally {
+            stringRedisTemplate.delete(lockedIds.stream()
+                    .map(id -> RedisConstants.LOCK_KEY_PREFIX + redisKeyPrefix + id)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * 读取Redis中当前的逻辑过期时间，二进制格式只读取头部，缓存不存在或为空值时返回-1
+     */
+    private long readExpireAt(String redisKey){
+        byte[] raw = getRaw(redisKey);
+        if(raw == null || raw.length == 0){
+            return -1L;
+        }
+        if(CacheEnvelope.isEnvelope(raw)){
+            return CacheEnvelope.readExpireAt(raw);
+        }
+        RedisData redisData = JSONUtil.toBean(new String(raw, StandardCharsets.UTF_8), RedisData.class);
+        return redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 解码缓存数据，开启格式迁移时将旧格式数据重写为新格式
+     * @return 数据已损坏（解压失败、编解码器未知）时删除该数据并返回null，调用方按未命中处理
+     */
+    private CacheValue decode(String redisKey, byte[] raw, Type entity, boolean logical){
+        CacheValue cacheValue;
+        try {
+            cacheValue = cacheSerializer.deserialize(redisKey, raw, entity, logical);
+        } catch (IllegalStateException e) {
+            log.warn("缓存数据已损坏，删除后按未命中处理，key: {}", redisKey, e);
+            stringRedisTemplate.execute(CACHE_DELETE_CORRUPT_SCRIPT, RedisSerializer.byteArray(),
+                    new GenericToStringSerializer<>(Long.class), Collections.singletonList(redisKey), raw);
+            return null;
+        }
+        if(cacheSerializer.needsMigration(cacheValue)){
+            try {
+                byte[] migrated = cacheSerializer.serialize(redisKey, cacheValue.getValue(),
+                        cacheValue.getExpireAt(), cacheValue.getDelta(), cacheValue.getVersion());
+                stringRedisTemplate.execute(CACHE_MIGRATE_SCRIPT, RedisSerializer.byteArray(),
+                        new GenericToStringSerializer<>(Long.class), Collections.singletonList(redisKey), raw, migrated);
+            } catch (Exception e) {
+                //迁移失败不影响本次读取，下次读取时重试
+                log.warn("缓存格式迁移失败，key: {}", redisKey, e);
+            }
+        }
+        return cacheValue;
+    }
+
+    private byte[] getRaw(String key){
+        byte[] rawKey = rawKey(key);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    /**
+     * 带版本号写入，Redis中已有更新的版本时放弃写入
+     * @param writeThrough 是否为数据更新后的写穿，否则为重建
+     * @param ttl 小于等于0表示不设置过期时间
+     * @return 是否写入成功
+     */
+    private boolean casSet(String key, byte[] value, long version, boolean writeThrough, long ttl, TimeUnit timeUnit){
+        long ttlMillis = ttl > 0 ? timeUnit.toMillis(ttl) : -1L;
+        Long result = stringRedisTemplate.execute(CACHE_CAS_SET_SCRIPT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class), Collections.singletonList(key),
+                value, rawKey(String.valueOf(version)), rawKey(String.valueOf(ttlMillis)),
+                rawKey(writeThrough ? "1" : "0"), rawKey(String.valueOf(System.currentTimeMillis())));
+        if(result == null || result == 0L){
+            log.debug("Redis中已有更新版本的数据，放弃写入，key: {}, version: {}", key, version);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 写入Redis的版本号：数据版本号*2，写穿时再加1，同一数据版本号的写穿数据与重建数据据此区分
+     */
+    private long versionOf(Object value, boolean writeThrough){
+        ToLongFunction<Object> resolver = versionResolvers.get(value.getClass());
+        long version = resolver == null ? 0L : resolver.applyAsLong(value);
+        return writeThrough ? version * 2 + 1 : version * 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R cast(Object value){
+        return (R) value;
+    }
+
+    private byte[] rawKey(String key){
+        return stringRedisTemplate.getStringSerializer().serialize(key);
+    }
+
+    /**
+     * 清除id的空值记录，新增数据后调用，否则新数据在空值记录过期前会被判断为不存在
+     * @param redisKeyPrefix redis中存储的key值前缀
+     * @param dbId 数据库id
+     */
+    public void clearNegative(String redisKeyPrefix, Object dbId){
+        if(negativeCache.supports(dbId)){
+            negativeCache.remove(redisKeyPrefix, dbId);
+        }
+    }
+
+    /**
+     * 查询缓存数据，数字id在同一管道内查询空值记录（GET + GETBIT，一次往返）
+     * 缓存数据优先于空值记录；命中空值记录时返回空数组，与空字符串形式的空值一致
+     */
+    private byte[] getRawOrNegative(String redisKeyPrefix, Object dbId){
+        byte[] rawKey = rawKey(redisKeyPrefix + dbId);
+        if(!negativeCache.supports(dbId)){
+            return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(rawKey);
+            negativeCache.contains(connection, redisKeyPrefix, dbId);
+            return null;
+        }, RedisSerializer.byteArray());
+        byte[] raw = (byte[]) results.get(0);
+        if(raw == null && Boolean.TRUE.equals(results.get(1))){
+            return new byte[0];
+        }
+        return raw;
+    }
+
+    /**
+     * 缓存空值，数字id记录到空值位图中，同时删除可能残留的旧数据；其他id写入空字符串
+     */
+    private void setNullValue(String redisKeyPrefix, Object dbId){
+        if(!negativeCache.supports(dbId)){
+            setNullValue(redisKeyPrefix + dbId);
+            return;
+        }
+        setNullValues(redisKeyPrefix, Collections.singletonList(dbId));
+    }
+
+    /**
+     * 批量记录数字id的空值，一次往返
+     */
+    private void setNullValues(String redisKeyPrefix, List<?> dbIds){
+        if(dbIds.isEmpty()){
+            return;
+        }
+        List<String> keys = dbIds.stream().map(id -> redisKeyPrefix + id).collect(Collectors.toList());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> connection.keyCommands().del(rawKey(key)));
+            dbIds.forEach(id -> negativeCache.add(connection, redisKeyPrefix, id));
+            return null;
+        });
+        localCache.invalidateAll(keys);
+    }
+
+    /**
+     * 缓存空值，解决缓存穿透
+     */
+    private void setNullValue(String key){
+        stringRedisTemplate.opsForValue().set(key, "", ttlPolicy.nullTtlMillis(key), TimeUnit.MILLISECONDS);
+    }
+
     private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", RedisConstants.LOCK_CACHE_REBUILD_TTL, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
     }
 
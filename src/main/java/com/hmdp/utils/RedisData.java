@@ -8,4 +8,8 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    //上次重建耗时（毫秒），用于提前刷新
+    private long delta;
+    //数据版本号，写入时拒绝覆盖更新的版本
+    private long version;
 }
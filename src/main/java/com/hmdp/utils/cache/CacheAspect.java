@@ -0,0 +1,104 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.utils.CacheClient;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * {@link Cached}和{@link CacheEvict}的切面，将方法调用转换为CacheClient的查询与删除
+ * 优先级高于事务切面，删除缓存发生在事务提交之后，避免并发读取在提交前把旧数据重新写回缓存；
+ * 优先级需低于ExposeInvocationInterceptor（HIGHEST_PRECEDENCE + 1），否则无法绑定通知方法中的注解参数
+ */
+@Aspect
+@Component
+@Order(0)
+public class CacheAspect {
+    private final CacheClient cacheClient;
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    //解析后的表达式可以复用
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    public CacheAspect(CacheClient cacheClient) {
+        this.cacheClient = cacheClient;
+    }
+
+    @Around("@annotation(cached)")
+    public Object cached(ProceedingJoinPoint joinPoint, Cached cached) throws Throwable {
+        Method method = resolveMethod(joinPoint);
+        Object dbId = evaluate(cached.key(), method, joinPoint.getArgs());
+        if (dbId == null) {
+            return joinPoint.proceed();
+        }
+        //缓存未命中或后台重建时执行原方法，每次执行都是一次新的调用，可以在其他线程中执行
+        Function<Object, Object> dbFallback = id -> proceed(joinPoint);
+        Type type = method.getGenericReturnType();
+        switch (cached.strategy()) {
+            case LOGICAL_EXPIRE:
+                return cacheClient.queryWithLogicalExpire(
+                        cached.prefix(), dbId, type, dbFallback, cached.ttl(), cached.timeUnit());
+            case STALE_WHILE_REVALIDATE:
+                return cacheClient.queryWithStaleWhileRevalidate(
+                        cached.prefix(), dbId, type, dbFallback, cached.ttl(), cached.hardTtl(), cached.timeUnit());
+            default:
+                return cacheClient.queryWithPassThrough(
+                        cached.prefix(), dbId, type, dbFallback, cached.ttl(), cached.timeUnit());
+        }
+    }
+
+    @Around("@annotation(cacheEvict)")
+    public Object evict(ProceedingJoinPoint joinPoint, CacheEvict cacheEvict) throws Throwable {
+        Object result = joinPoint.proceed();
+        Object dbId = evaluate(cacheEvict.key(), resolveMethod(joinPoint), joinPoint.getArgs());
+        if (dbId != null) {
+            cacheClient.delete(cacheEvict.prefix() + dbId);
+            cacheClient.clearNegative(cacheEvict.prefix(), dbId);
+        }
+        return result;
+    }
+
+    /**
+     * 取实现类上的方法，接口方法上没有参数名，也没有注解
+     */
+    private Method resolveMethod(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return AopUtils.getMostSpecificMethod(method, AopUtils.getTargetClass(joinPoint.getTarget()));
+    }
+
+    private Object evaluate(String key, Method method, Object[] args) {
+        Expression expression = expressions.computeIfAbsent(key, parser::parseExpression);
+        MethodBasedEvaluationContext context =
+                new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+        return expression.getValue(context);
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("缓存数据加载失败", e);
+        }
+    }
+}
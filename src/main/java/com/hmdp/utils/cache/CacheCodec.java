@@ -0,0 +1,30 @@
+package com.hmdp.utils.cache;
+
+import java.lang.reflect.Type;
+
+/**
+ * 缓存数据编解码器，只负责数据本身的序列化，逻辑过期时间等元数据由{@link CacheEnvelope}负责
+ * 实现类注册为Spring Bean即可被{@link CacheSerializer}使用
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器编号，写入二进制头部，读取时据此选择解码器，不可与其他实现重复且上线后不可修改
+     */
+    byte id();
+
+    /**
+     * 编解码器名称，用于配置
+     */
+    String name();
+
+    byte[] encode(Object value);
+
+    /**
+     * @param bytes 数据所在的字节数组
+     * @param offset 数据起始位置
+     * @param length 数据长度
+     * @param type 目标类型
+     */
+    Object decode(byte[] bytes, int offset, int length, Type type);
+}
@@ -0,0 +1,140 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * binary格式缓存数据的压缩，编码后超过阈值的数据使用Deflate压缩
+ * 压缩结果为 4字节原始长度 + Deflate数据，解压时可一次分配好目标数组；
+ * 是否压缩记录在{@link CacheEnvelope}的标志位中，压缩与未压缩的数据可以同时存在，调整阈值无需迁移
+ * 解压时头部长度超出上限、解压结果与头部长度不一致的数据视为已损坏，抛出IllegalStateException，由读取方按未命中处理
+ */
+@Component
+public class CacheCompressor {
+    //压缩后节省不足10%时不压缩，避免读取时白白付出解压开销
+    private static final double MIN_SAVING = 0.1;
+
+    //解压后的最大长度，头部长度超出时不分配数组，按损坏处理
+    private static final int MAX_ORIGINAL_LENGTH = 64 * 1024 * 1024;
+
+    //Deflate的最大压缩比约为1032:1，头部长度超出压缩数据长度的1032倍时一定已损坏
+    private static final long MAX_DEFLATE_RATIO = 1032L;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final int threshold;
+
+    //Deflater和Inflater创建开销较大且不是线程安全的，每个线程复用一个
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater());
+
+    public CacheCompressor(CacheMetrics cacheMetrics, CacheProperties cacheProperties) {
+        this.cacheMetrics = cacheMetrics;
+        CacheProperties.Codec codec = cacheProperties.getCodec();
+        this.threshold = codec.getCompressThreshold();
+        int level = codec.getCompressLevel();
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    /**
+     * 压缩，并记录压缩前后的数据量
+     * @param prefix redis中的key前缀，用于监控
+     * @param payload 编码后的数据
+     * @return 压缩结果，未达到阈值或压缩效果不明显时返回null，此时应写入原数据
+     */
+    public byte[] compress(String prefix, byte[] payload) {
+        if (threshold <= 0 || payload.length < threshold) {
+            cacheMetrics.recordCompression(prefix, payload.length, payload.length);
+            return null;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        //输出缓冲区只留到节省10%的大小，写满仍未结束说明压缩效果不明显，直接放弃
+        byte[] out = new byte[4 + (int) (payload.length * (1 - MIN_SAVING))];
+        writeInt(out, payload.length);
+        int length = 4;
+        while (!deflater.finished() && length < out.length) {
+            int n = deflater.deflate(out, length, out.length - length);
+            if (n == 0) {
+                break;
+            }
+            length += n;
+        }
+        boolean compressed = deflater.finished();
+        cacheMetrics.recordCompressionTime(prefix, CacheMetrics.COMPRESS, System.nanoTime() - start);
+        if (!compressed) {
+            cacheMetrics.recordCompression(prefix, payload.length, payload.length);
+            return null;
+        }
+        cacheMetrics.recordCompression(prefix, payload.length, length);
+        return Arrays.copyOf(out, length);
+    }
+
+    /**
+     * 解压
+     * @param prefix redis中的key前缀，用于监控
+     * @param bytes 压缩结果所在的字节数组
+     * @param offset 压缩结果起始位置
+     * @param length 压缩结果长度
+     * @throws IllegalStateException 数据已损坏：头部长度超出上限，或解压结果与头部长度不一致
+     */
+    public byte[] decompress(String prefix, byte[] bytes, int offset, int length) {
+        long start = System.nanoTime();
+        if (length < 4) {
+            throw new IllegalStateException("缓存数据解压失败，压缩数据长度：" + length);
+        }
+        int originalLength = readInt(bytes, offset);
+        if (originalLength < 0 || originalLength > Math.min(MAX_ORIGINAL_LENGTH, (length - 4) * MAX_DEFLATE_RATIO)) {
+            throw new IllegalStateException("缓存数据解压失败，头部长度超出上限：" + originalLength);
+        }
+        byte[] out = new byte[originalLength];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(bytes, offset + 4, length - 4);
+        int n = 0;
+        try {
+            while (n < originalLength) {
+                int r = inflater.inflate(out, n, originalLength - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += r;
+            }
+            //已解压出头部长度的数据，Deflate数据还未结束说明实际长度超过头部长度
+            if (n == originalLength && !inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+                n++;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("缓存数据解压失败", e);
+        }
+        if (n != originalLength || !inflater.finished()) {
+            throw new IllegalStateException("缓存数据解压失败，头部长度：" + originalLength + "，实际长度至少：" + n);
+        }
+        cacheMetrics.recordCompressionTime(prefix, CacheMetrics.DECOMPRESS, System.nanoTime() - start);
+        return out;
+    }
+
+    private static void writeInt(byte[] bytes, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
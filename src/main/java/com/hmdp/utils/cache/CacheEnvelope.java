@@ -0,0 +1,142 @@
+package com.hmdp.utils.cache;
+
+import lombok.Getter;
+
+/**
+ * 二进制缓存格式：定长头部 + 数据
+ * <pre>
+ * 偏移  长度  内容
+ * 0     1     魔数 0xCE（不可能是JSON文本的首字节，据此区分新旧格式）
+ * 1     1     头部长度，数据从该偏移开始，新增头部字段时旧版本可直接跳过
+ * 2     1     标志位，bit0：数据经过Deflate压缩，此时数据部分为 4字节原始长度 + 压缩后的数据
+ * 3     1     编解码器编号
+ * 4     8     逻辑过期时间戳（毫秒），-1表示无逻辑过期
+ * 12    4     上次重建耗时（毫秒），用于提前刷新，头部长度为12的旧数据视为0
+ * 16    8     数据版本号，用于写入时比较新旧，头部长度小于24的旧数据视为0
+ * </pre>
+ * 判断是否过期、比较版本号只需读取头部，无需解析数据
+ */
+@Getter
+public class CacheEnvelope {
+    public static final byte MAGIC = (byte) 0xCE;
+
+    public static final byte FLAG_COMPRESSED = 0x01;
+
+    private static final int HEADER_LENGTH = 24;
+
+    //能被识别的最短头部
+    private static final int MIN_HEADER_LENGTH = 12;
+
+    private final byte flags;
+    private final byte codecId;
+    private final long expireAt;
+    private final int delta;
+    private final long version;
+    private final int payloadOffset;
+    private final int payloadLength;
+
+    private CacheEnvelope(byte flags, byte codecId, long expireAt, int delta, long version,
+                          int payloadOffset, int payloadLength) {
+        this.flags = flags;
+        this.codecId = codecId;
+        this.expireAt = expireAt;
+        this.delta = delta;
+        this.version = version;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    public static boolean isEnvelope(byte[] raw) {
+        return raw != null && raw.length >= MIN_HEADER_LENGTH && raw[0] == MAGIC;
+    }
+
+    /**
+     * 组装二进制缓存
+     * @param codecId 编解码器编号
+     * @param flags 标志位
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param delta 重建耗时（毫秒）
+     * @param version 数据版本号
+     * @param payload 编码后的数据
+     */
+    public static byte[] write(byte codecId, byte flags, long expireAt, int delta, long version, byte[] payload) {
+        byte[] raw = new byte[HEADER_LENGTH + payload.length];
+        raw[0] = MAGIC;
+        raw[1] = HEADER_LENGTH;
+        raw[2] = flags;
+        raw[3] = codecId;
+        writeLong(raw, 4, expireAt);
+        writeInt(raw, 12, delta);
+        writeLong(raw, 16, version);
+        System.arraycopy(payload, 0, raw, HEADER_LENGTH, payload.length);
+        return raw;
+    }
+
+    /**
+     * 解析头部，不解析数据
+     */
+    public static CacheEnvelope read(byte[] raw) {
+        int headerLength = raw[1] & 0xFF;
+        return new CacheEnvelope(raw[2], raw[3], readLong(raw, 4), readDelta(raw), readVersion(raw),
+                headerLength, raw.length - headerLength);
+    }
+
+    /**
+     * 只读取逻辑过期时间
+     */
+    public static long readExpireAt(byte[] raw) {
+        return readLong(raw, 4);
+    }
+
+    /**
+     * 只读取重建耗时
+     */
+    public static int readDelta(byte[] raw) {
+        return (raw[1] & 0xFF) >= 16 ? readInt(raw, 12) : 0;
+    }
+
+    /**
+     * 只读取版本号
+     */
+    public static long readVersion(byte[] raw) {
+        return (raw[1] & 0xFF) >= 24 ? readLong(raw, 16) : 0L;
+    }
+
+    public boolean isCompressed() {
+        return (flags & FLAG_COMPRESSED) != 0;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return expireAt >= 0 && expireAt <= nowMillis;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
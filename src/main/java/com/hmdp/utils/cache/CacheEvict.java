@@ -0,0 +1,26 @@
+package com.hmdp.utils.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法执行成功后删除缓存（包括各节点的本地缓存和空值记录），与{@link Cached}配合使用
+ * key在方法执行后计算，可以引用方法内回填的字段，如新增数据的自增id
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheEvict {
+    /**
+     * redis中的key前缀，与{@link Cached#prefix()}一致
+     */
+    String prefix();
+
+    /**
+     * 数据库id的SpEL表达式，可引用方法参数，如 #voucher.shopId；结果为null时不删除
+     */
+    String key() default "#p0";
+}
@@ -0,0 +1,160 @@
+package com.hmdp.utils.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存监控指标，按key前缀统计，通过 /actuator/metrics 和 /actuator/prometheus 暴露
+ * <pre>
+ * cache.gets{prefix, result}       查询次数，result取值：
+ *                                  local_hit 本地缓存命中，hit Redis命中，null_hit 命中空值，
+ *                                  rejected 被存在性过滤器拦截，miss 未命中，stale 返回了逻辑过期的旧数据
+ * cache.lock.contention{prefix}    重建时获取互斥锁失败的次数
+ * cache.rebuild{prefix}            查询数据库并写回缓存的耗时
+ * cache.rebuild.failures{prefix}   重建失败次数
+ * cache.compression.bytes{prefix, stage}  binary格式写入的数据量，stage取值：raw 压缩前，stored 实际写入
+ * cache.compression{prefix, op}    压缩（op=compress）与解压（op=decompress）耗时
+ * </pre>
+ * 命中率 = (local_hit + hit + null_hit + rejected) / 全部
+ * 压缩率 = stored / raw
+ */
+@Component
+public class CacheMetrics {
+    public static final String LOCAL_HIT = "local_hit";
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String REJECTED = "rejected";
+    public static final String MISS = "miss";
+    public static final String STALE = "stale";
+
+    public static final String COMPRESS = "compress";
+    public static final String DECOMPRESS = "decompress";
+
+    private final MeterRegistry meterRegistry;
+
+    //避免每次记录都在注册表中查找，key为 名称|前缀|标签名|标签值
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 记录查询结果
+     * @param prefix redis中的key前缀
+     * @param result 查询结果，取值见类注释
+     */
+    public void recordGet(String prefix, String result) {
+        recordGets(prefix, result, 1);
+    }
+
+    /**
+     * 批量记录查询结果
+     */
+    public void recordGets(String prefix, String result, int count) {
+        if (count > 0) {
+            counter("cache.gets", prefix, "result", result).increment(count);
+        }
+    }
+
+    /**
+     * 记录获取重建互斥锁失败
+     */
+    public void recordLockContention(String prefix) {
+        recordLockContention(prefix, 1);
+    }
+
+    /**
+     * 批量记录获取重建互斥锁失败
+     */
+    public void recordLockContention(String prefix, int count) {
+        if (count > 0) {
+            counter("cache.lock.contention", prefix, null, null).increment(count);
+        }
+    }
+
+    /**
+     * 记录一次重建耗时
+     */
+    public void recordRebuild(String prefix, long nanos) {
+        timer("cache.rebuild", "缓存重建耗时", prefix, null, null).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次重建失败
+     */
+    public void recordRebuildFailure(String prefix) {
+        counter("cache.rebuild.failures", prefix, null, null).increment();
+    }
+
+    /**
+     * 记录一次binary格式写入的数据量，未压缩时两者相等
+     * @param rawBytes 压缩前的字节数
+     * @param storedBytes 实际写入的字节数
+     */
+    public void recordCompression(String prefix, int rawBytes, int storedBytes) {
+        counter("cache.compression.bytes", prefix, "stage", "raw").increment(rawBytes);
+        counter("cache.compression.bytes", prefix, "stage", "stored").increment(storedBytes);
+    }
+
+    /**
+     * 记录一次压缩或解压耗时
+     * @param op {@link #COMPRESS} 或 {@link #DECOMPRESS}
+     */
+    public void recordCompressionTime(String prefix, String op, long nanos) {
+        timer("cache.compression", "缓存数据压缩与解压耗时", prefix, "op", op).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 从key中截取前缀（最后一个冒号及之前的部分），用于只拿到完整key的场景
+     */
+    public static String prefixOf(String key) {
+        return key.substring(0, key.lastIndexOf(':') + 1);
+    }
+
+    /**
+     * 绑定布隆过滤器的统计数据
+     */
+    public void bindBloomFilter(RedisBloomFilter filter) {
+        FunctionCounter.builder("cache.bloom.checks", filter, RedisBloomFilter::getCheckCount)
+                .tag("filter", filter.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.bloom.rejects", filter, RedisBloomFilter::getRejectCount)
+                .tag("filter", filter.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.bloom.false.positives", filter, RedisBloomFilter::getFalsePositiveCount)
+                .tag("filter", filter.getName())
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String name, String prefix, String tagKey, String tagValue) {
+        String id = name + '|' + prefix + '|' + tagKey + '|' + tagValue;
+        return counters.computeIfAbsent(id, k -> {
+            Counter.Builder builder = Counter.builder(name).tag("prefix", prefix);
+            if (tagKey != null) {
+                builder.tag(tagKey, tagValue);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    private Timer timer(String name, String description, String prefix, String tagKey, String tagValue) {
+        String id = name + '|' + prefix + '|' + tagKey + '|' + tagValue;
+        return timers.computeIfAbsent(id, k -> {
+            Timer.Builder builder = Timer.builder(name).description(description).tag("prefix", prefix);
+            if (tagKey != null) {
+                builder.tag(tagKey, tagValue);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+}
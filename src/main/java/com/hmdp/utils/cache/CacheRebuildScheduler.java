@@ -0,0 +1,160 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 缓存重建调度器，所有后台重建共用
+ * 1. 按key去重：同一个key已在排队或执行中时，新的重建请求直接合并，不再提交，也不再访问Redis抢锁
+ * 2. 有界队列：排队数达到上限时丢弃新的重建请求，调用方继续返回旧数据，下次读取时再触发
+ * 3. 优先级：热点key的重建排在普通key之前，同优先级先进先出
+ * 监控指标：cache.rebuild.queue.size 排队数，cache.rebuild.queue.wait 排队耗时，
+ * cache.rebuild.coalesced 被合并的请求数，cache.rebuild.dropped 被丢弃的请求数
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler {
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    //排队或执行中的key
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Timer queueWait;
+
+    private final Counter coalesced;
+
+    private final Counter dropped;
+
+    public CacheRebuildScheduler(CacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        CacheProperties.Rebuild rebuild = cacheProperties.getRebuild();
+        this.queueCapacity = rebuild.getQueueCapacity();
+        AtomicInteger threadIndex = new AtomicInteger();
+        //任务在提交前已检查过容量，这里的队列不会无限增长
+        this.executor = new ThreadPoolExecutor(rebuild.getThreads(), rebuild.getThreads(),
+                0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("cache.rebuild.queue.size", executor, e -> e.getQueue().size())
+                .description("等待执行的缓存重建任务数")
+                .register(meterRegistry);
+        Gauge.builder("cache.rebuild.pending.keys", pendingKeys, Set::size)
+                .description("排队或执行中的缓存重建key数")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("cache.rebuild.queue.wait")
+                .description("缓存重建任务排队耗时")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("cache.rebuild.coalesced").register(meterRegistry);
+        this.dropped = Counter.builder("cache.rebuild.dropped").register(meterRegistry);
+    }
+
+    /**
+     * 提交单个key的重建任务
+     * @param key redis中的key，用于去重
+     * @param hot 是否为热点key，热点key优先执行
+     * @param task 重建任务
+     * @return 是否已提交，被合并或丢弃时返回false
+     */
+    public boolean submit(String key, boolean hot, Runnable task) {
+        return submitBatch(Collections.singletonMap(key, key), hot, keys -> task.run());
+    }
+
+    /**
+     * 提交一批key的重建任务，已在排队或执行中的key会被剔除，剩余的key作为一个任务执行
+     * @param items redis中的key -> 任务需要的数据（如数据库id）
+     * @param hot 是否包含热点key
+     * @param task 重建任务，参数为实际需要重建的数据
+     * @return 是否已提交
+     */
+    public <T> boolean submitBatch(Map<String, T> items, boolean hot, Consumer<List<T>> task) {
+        List<String> reservedKeys = new ArrayList<>(items.size());
+        List<T> reservedItems = new ArrayList<>(items.size());
+        items.forEach((key, item) -> {
+            if (pendingKeys.add(key)) {
+                reservedKeys.add(key);
+                reservedItems.add(item);
+            } else {
+                coalesced.increment();
+            }
+        });
+        if (reservedKeys.isEmpty()) {
+            return false;
+        }
+        if (executor.getQueue().size() >= queueCapacity) {
+            reservedKeys.forEach(pendingKeys::remove);
+            dropped.increment(reservedKeys.size());
+            log.warn("缓存重建队列已满，丢弃{}个key的重建，继续返回旧数据", reservedKeys.size());
+            return false;
+        }
+        long submitTime = System.nanoTime();
+        executor.execute(new RebuildTask(hot, sequence.getAndIncrement(), () -> {
+            queueWait.record(System.nanoTime() - submitTime, TimeUnit.NANOSECONDS);
+            try {
+                task.accept(reservedItems);
+            } catch (Exception e) {
+                log.error("缓存重建失败，key: {}", reservedKeys, e);
+            } finally {
+                reservedKeys.forEach(pendingKeys::remove);
+            }
+        }));
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 带优先级的任务，热点key优先，同优先级按提交顺序
+     */
+    private static class RebuildTask implements Runnable, Comparable<RebuildTask> {
+        private final boolean hot;
+        private final long sequence;
+        private final Runnable delegate;
+
+        private RebuildTask(boolean hot, long sequence, Runnable delegate) {
+            this.hot = hot;
+            this.sequence = sequence;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+
+        @Override
+        public int compareTo(RebuildTask other) {
+            if (hot != other.hot) {
+                return hot ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
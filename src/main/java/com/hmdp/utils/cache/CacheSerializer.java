@@ -0,0 +1,151 @@
+package com.hmdp.utils.cache;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.utils.RedisData;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存数据的读写格式
+ * json：与原有格式一致，普通缓存为数据本身的JSON，逻辑过期缓存为RedisData的JSON
+ * binary：{@link CacheEnvelope}定长头部 + 编解码器编码后的数据，超过阈值的数据经{@link CacheCompressor}压缩
+ * 读取时根据首字节自动识别两种格式，因此可以先全量上线再切换写入格式；开启迁移后读到旧格式会顺带重写为新格式
+ */
+@Component
+public class CacheSerializer {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary";
+
+    private final Map<Byte, CacheCodec> codecs = new HashMap<>();
+
+    private final boolean binary;
+
+    private final CacheCodec binaryCodec;
+
+    private final boolean migrateOnRead;
+
+    private final CacheCompressor compressor;
+
+    public CacheSerializer(List<CacheCodec> codecList, CacheCompressor compressor, CacheProperties cacheProperties) {
+        this.compressor = compressor;
+        CacheProperties.Codec codec = cacheProperties.getCodec();
+        CacheCodec selected = null;
+        for (CacheCodec c : codecList) {
+            if (codecs.put(c.id(), c) != null) {
+                throw new IllegalStateException("缓存编解码器编号重复：" + c.id());
+            }
+            if (c.name().equals(codec.getBinaryCodec())) {
+                selected = c;
+            }
+        }
+        if (selected == null) {
+            throw new IllegalStateException("未找到缓存编解码器：" + codec.getBinaryCodec());
+        }
+        this.binaryCodec = selected;
+        this.binary = FORMAT_BINARY.equals(codec.getFormat());
+        this.migrateOnRead = binary && codec.isMigrateOnRead();
+    }
+
+    /**
+     * 按当前写入格式编码
+     * @param key redis中的key，用于监控
+     * @param value 数据
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     */
+    public byte[] serialize(String key, Object value, long expireAt) {
+        return serialize(key, value, expireAt, 0L);
+    }
+
+    /**
+     * 按当前写入格式编码，同时记录重建耗时
+     * @param key redis中的key，用于监控
+     * @param value 数据
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param delta 重建耗时（毫秒）
+     */
+    public byte[] serialize(String key, Object value, long expireAt, long delta) {
+        return serialize(key, value, expireAt, delta, 0L);
+    }
+
+    /**
+     * 按当前写入格式编码，同时记录重建耗时和版本号
+     * json格式的普通缓存保持为数据本身的JSON，不携带版本号，也不压缩
+     * @param key redis中的key，用于监控
+     * @param value 数据
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param delta 重建耗时（毫秒）
+     * @param version 数据版本号
+     */
+    public byte[] serialize(String key, Object value, long expireAt, long delta, long version) {
+        if (binary) {
+            int d = (int) Math.min(delta, Integer.MAX_VALUE);
+            byte[] payload = binaryCodec.encode(value);
+            byte[] compressed = compressor.compress(CacheMetrics.prefixOf(key), payload);
+            if (compressed != null) {
+                return CacheEnvelope.write(binaryCodec.id(), CacheEnvelope.FLAG_COMPRESSED, expireAt, d, version, compressed);
+            }
+            return CacheEnvelope.write(binaryCodec.id(), (byte) 0, expireAt, d, version, payload);
+        }
+        if (expireAt < 0) {
+            return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+        }
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()));
+        redisData.setDelta(delta);
+        redisData.setVersion(version);
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解码，自动识别新旧格式和是否压缩
+     * @param key redis中的key，用于监控
+     * @param raw Redis中的原始数据，不能为空数组
+     * @param type 目标类型
+     * @param logical 是否为逻辑过期缓存（仅旧格式需要区分）
+     */
+    public CacheValue deserialize(String key, byte[] raw, Type type, boolean logical) {
+        if (CacheEnvelope.isEnvelope(raw)) {
+            CacheEnvelope envelope = CacheEnvelope.read(raw);
+            CacheCodec codec = codecs.get(envelope.getCodecId());
+            if (codec == null) {
+                throw new IllegalStateException("未知的缓存编解码器编号：" + envelope.getCodecId());
+            }
+            Object value;
+            if (envelope.isCompressed()) {
+                byte[] payload = compressor.decompress(CacheMetrics.prefixOf(key), raw,
+                        envelope.getPayloadOffset(), envelope.getPayloadLength());
+                value = codec.decode(payload, 0, payload.length, type);
+            } else {
+                value = codec.decode(raw, envelope.getPayloadOffset(), envelope.getPayloadLength(), type);
+            }
+            return new CacheValue(value, envelope.getExpireAt(), envelope.getDelta(), envelope.getVersion(), false);
+        }
+        String json = new String(raw, StandardCharsets.UTF_8);
+        if (!logical) {
+            return new CacheValue(JSONUtil.parse(json).toBean(type, true), -1L, 0L, 0L, true);
+        }
+        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+        //数据可能是对象，也可能是数组（如List类型的数据）
+        Object value = ((JSON) redisData.getData()).toBean(type, true);
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new CacheValue(value, expireAt, redisData.getDelta(), redisData.getVersion(), true);
+    }
+
+    /**
+     * 读到的数据是否需要重写为新格式
+     */
+    public boolean needsMigration(CacheValue cacheValue) {
+        return migrateOnRead && cacheValue.isLegacy();
+    }
+}
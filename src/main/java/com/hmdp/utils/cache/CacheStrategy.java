@@ -0,0 +1,21 @@
+package com.hmdp.utils.cache;
+
+/**
+ * {@link Cached}使用的缓存策略，分别对应CacheClient中的三种查询方式
+ */
+public enum CacheStrategy {
+    /**
+     * 物理过期，过期后同步查询数据库，数据库中不存在时缓存空值
+     */
+    PASS_THROUGH,
+
+    /**
+     * 逻辑过期，过期后返回旧数据并后台重建，key常驻Redis，适合提前预热的数据
+     */
+    LOGICAL_EXPIRE,
+
+    /**
+     * 软过期+硬过期，软过期后返回旧数据并后台刷新，硬过期后同步查询数据库，无需预热
+     */
+    STALE_WHILE_REVALIDATE
+}
@@ -0,0 +1,89 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存过期时间策略，物理过期和逻辑过期共用
+ * 实际过期时间 = 基础过期时间 * (1 + 热点延长比例，仅热点key) * (1 + [0, 抖动比例)内的随机数)
+ * 同一批写入的key过期时间被随机打散，不会在同一时刻集中过期；热点key保留得更久，减少重建次数
+ */
+@Component
+public class CacheTtlPolicy {
+    private final HotKeyDetector hotKeyDetector;
+
+    private final CacheProperties.TtlSpec defaultPolicy;
+
+    //按前缀长度从长到短排列，优先匹配最长的前缀
+    private final List<CacheProperties.TtlSpec> policies;
+
+    public CacheTtlPolicy(HotKeyDetector hotKeyDetector, CacheProperties cacheProperties) {
+        this.hotKeyDetector = hotKeyDetector;
+        CacheProperties.Ttl ttl = cacheProperties.getTtl();
+        this.defaultPolicy = ttl.getDefaultPolicy();
+        this.policies = new ArrayList<>();
+        ttl.getPolicies().values().forEach(spec -> {
+            if (spec.getPrefix() == null || spec.getPrefix().isEmpty()) {
+                throw new IllegalStateException("缓存过期时间策略未配置key前缀");
+            }
+            policies.add(spec);
+        });
+        policies.sort(Comparator.comparingInt((CacheProperties.TtlSpec spec) -> spec.getPrefix().length()).reversed());
+    }
+
+    /**
+     * 计算实际过期时间
+     * @param key redis中的key
+     * @param ttl 调用方传入的过期时间，策略未配置基础过期时间时作为基础过期时间
+     * @param timeUnit
+     * @return 过期时间（毫秒）
+     */
+    public long ttlMillis(String key, long ttl, TimeUnit timeUnit) {
+        CacheProperties.TtlSpec spec = resolve(key);
+        double millis = spec.getBaseSeconds() > 0 ? TimeUnit.SECONDS.toMillis(spec.getBaseSeconds()) : timeUnit.toMillis(ttl);
+        if (hotKeyDetector.isHot(key)) {
+            millis *= 1 + spec.getHotExtensionRatio();
+        }
+        if (spec.getJitterRatio() > 0) {
+            millis *= 1 + ThreadLocalRandom.current().nextDouble(spec.getJitterRatio());
+        }
+        return (long) millis;
+    }
+
+    /**
+     * 计算空值缓存的过期时间，同样带随机抖动
+     * @param key redis中的key
+     * @return 过期时间（毫秒）
+     */
+    public long nullTtlMillis(String key) {
+        CacheProperties.TtlSpec spec = resolve(key);
+        double millis = TimeUnit.SECONDS.toMillis(spec.getNullTtlSeconds());
+        if (spec.getJitterRatio() > 0) {
+            millis *= 1 + ThreadLocalRandom.current().nextDouble(spec.getJitterRatio());
+        }
+        return Math.max((long) millis, 1L);
+    }
+
+    /**
+     * 空值缓存的基础过期时间（秒），不带抖动
+     * @param key redis中的key或key前缀
+     */
+    public long nullTtlSeconds(String key) {
+        return Math.max(resolve(key).getNullTtlSeconds(), 1L);
+    }
+
+    private CacheProperties.TtlSpec resolve(String key) {
+        for (CacheProperties.TtlSpec spec : policies) {
+            if (key.startsWith(spec.getPrefix())) {
+                return spec;
+            }
+        }
+        return defaultPolicy;
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.utils.cache;
+
+import lombok.Getter;
+
+/**
+ * 从Redis中读取并解码后的缓存数据
+ */
+@Getter
+public class CacheValue {
+    private final Object value;
+
+    //逻辑过期时间戳（毫秒），-1表示无逻辑过期
+    private final long expireAt;
+
+    //上次重建耗时（毫秒），0表示未知
+    private final long delta;
+
+    //数据版本号，0表示未知
+    private final long version;
+
+    //是否为旧版JSON格式
+    private final boolean legacy;
+
+    public CacheValue(Object value, long expireAt, long delta, long version, boolean legacy) {
+        this.value = value;
+        this.expireAt = expireAt;
+        this.delta = delta;
+        this.version = version;
+        this.legacy = legacy;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return expireAt >= 0 && expireAt <= nowMillis;
+    }
+}
@@ -0,0 +1,43 @@
+package com.hmdp.utils.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 声明式缓存，方法返回值按指定策略通过CacheClient缓存，监控指标与手写的缓存一致
+ * 方法的参数即数据库查询条件，方法体即数据库查询，返回null表示数据不存在（会缓存空值）；
+ * 返回值可能来自本地缓存，调用方不能修改；后台重建在其他线程中执行，方法内不能依赖当前登录用户等线程上下文
+ * 同一个类内部调用时需通过代理对象调用才会生效
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+    /**
+     * redis中的key前缀，如 cache:blog:
+     */
+    String prefix();
+
+    /**
+     * 数据库id的SpEL表达式，可引用方法参数，如 #blogId；结果为null时不走缓存
+     */
+    String key() default "#p0";
+
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+
+    /**
+     * 过期时间：PASS_THROUGH为物理过期时间，LOGICAL_EXPIRE为逻辑过期时间，STALE_WHILE_REVALIDATE为软过期时间
+     */
+    long ttl();
+
+    /**
+     * 硬过期时间，仅STALE_WHILE_REVALIDATE使用，需大于ttl
+     */
+    long hardTtl() default -1L;
+
+    TimeUnit timeUnit() default TimeUnit.MINUTES;
+}
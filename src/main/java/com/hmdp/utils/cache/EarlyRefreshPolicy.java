@@ -0,0 +1,46 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 逻辑过期缓存的概率提前刷新（XFetch）
+ * 每次读取时以 now - delta * beta * ln(rand) >= expireAt 判断是否需要重建，rand为(0,1]内的均匀随机数
+ * 重建越慢（delta越大）、距离过期越近，提前刷新的概率越大；热点key几乎总能在过期前完成重建，
+ * 不同key的重建时间点也被随机打散，不会在同一时刻集中过期
+ */
+@Component
+public class EarlyRefreshPolicy {
+    private final boolean enabled;
+
+    private final double beta;
+
+    public EarlyRefreshPolicy(CacheProperties cacheProperties) {
+        CacheProperties.EarlyRefresh earlyRefresh = cacheProperties.getEarlyRefresh();
+        this.enabled = earlyRefresh.isEnabled();
+        this.beta = earlyRefresh.getBeta();
+    }
+
+    /**
+     * 判断是否需要重建缓存
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param delta 上次重建耗时（毫秒），未知时为0，此时只在过期后重建
+     * @param nowMillis 当前时间戳（毫秒）
+     * @return 已过期或命中提前刷新时返回true
+     */
+    public boolean shouldRebuild(long expireAt, long delta, long nowMillis) {
+        if (expireAt < 0) {
+            return false;
+        }
+        if (expireAt <= nowMillis) {
+            return true;
+        }
+        if (!enabled || delta <= 0) {
+            return false;
+        }
+        double rand = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return nowMillis - delta * beta * Math.log(rand) >= expireAt;
+    }
+}
@@ -0,0 +1,34 @@
+package com.hmdp.utils.cache;
+
+import java.util.Collection;
+
+/**
+ * 存在性过滤器，用于在查询缓存和数据库之前拦截一定不存在的id，解决缓存穿透问题
+ * 允许误判存在，不允许误判不存在
+ */
+public interface ExistenceFilter {
+
+    /**
+     * 判断id是否可能存在
+     * @param id 数据库id
+     * @return false表示一定不存在
+     */
+    boolean mightContain(Object id);
+
+    /**
+     * 记录新增的id
+     * @param id 数据库id
+     */
+    void put(Object id);
+
+    /**
+     * 批量记录id
+     * @param ids 数据库id集合
+     */
+    void putAll(Collection<?> ids);
+
+    /**
+     * 记录一次误判：过滤器判断存在，但数据库中查询不到
+     */
+    void recordFalsePositive();
+}
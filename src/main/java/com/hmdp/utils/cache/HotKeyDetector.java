@@ -0,0 +1,192 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 热点key探测
+ * 按采样率对读请求计数，计数存放在滑动窗口内的多个Count-Min Sketch中（每格一个），内存占用与key数量无关；
+ * 窗口内估算访问次数超过阈值的key被判定为热点（最多保留maxHotKeys个），降到阈值一半以下时取消，
+ * 热点key在{@link LocalCache}的热点区中保存短期副本，同一时间大量请求同一个key时不再全部打到Redis的同一个线程上
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+    private static final ScheduledExecutorService WINDOW_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    //Count-Min Sketch的行数（哈希函数个数）和每行的计数器个数
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 4096;
+
+    private final LocalCache localCache;
+
+    private final boolean enabled;
+
+    private final double sampleRate;
+
+    private final long threshold;
+
+    private final int maxHotKeys;
+
+    //滑动窗口，每格一个DEPTH * WIDTH的计数器数组
+    private final AtomicIntegerArray[] slots;
+
+    private volatile int current = 0;
+
+    //热点key -> 窗口内估算访问次数
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    public HotKeyDetector(LocalCache localCache, CacheProperties cacheProperties) {
+        this.localCache = localCache;
+        CacheProperties.HotKey hotKey = cacheProperties.getHotKey();
+        this.enabled = hotKey.isEnabled();
+        this.sampleRate = hotKey.getSampleRate();
+        this.threshold = hotKey.getThreshold();
+        this.maxHotKeys = hotKey.getMaxHotKeys();
+        int slotCount = Math.max(hotKey.getWindowSlots(), 1);
+        this.slots = new AtomicIntegerArray[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new AtomicIntegerArray(DEPTH * WIDTH);
+        }
+        if (enabled) {
+            long slotMillis = Math.max(TimeUnit.SECONDS.toMillis(hotKey.getWindowSeconds()) / slotCount, 1L);
+            WINDOW_EXECUTOR.scheduleAtFixedRate(this::rotate, slotMillis, slotMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 记录一次读请求，按采样率计数
+     * @param key redis中的key
+     */
+    public void record(String key) {
+        if (!enabled || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        AtomicIntegerArray slot = slots[current];
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < DEPTH; i++) {
+            slot.incrementAndGet(i * WIDTH + index(h1, h2, i));
+        }
+        long estimate = estimate(h1, h2);
+        if (estimate < threshold) {
+            return;
+        }
+        if (hotKeys.containsKey(key) || hotKeys.size() < maxHotKeys) {
+            if (hotKeys.put(key, estimate) == null) {
+                log.info("发现热点key: {}，窗口内估算访问次数: {}", key, estimate);
+            }
+            return;
+        }
+        //已满，替换访问次数最少的热点key
+        Map.Entry<String, Long> coldest = null;
+        for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+            if (coldest == null || entry.getValue() < coldest.getValue()) {
+                coldest = entry;
+            }
+        }
+        if (coldest != null && coldest.getValue() < estimate && hotKeys.remove(coldest.getKey(), coldest.getValue())) {
+            demote(coldest.getKey());
+            hotKeys.put(key, estimate);
+        }
+    }
+
+    /**
+     * 是否为热点key
+     */
+    public boolean isHot(String key) {
+        return enabled && hotKeys.containsKey(key);
+    }
+
+    /**
+     * 当前热点key，按访问次数从高到低排列
+     * @return key -> 窗口内估算访问次数
+     */
+    public Map<String, Long> getHotKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> result = new LinkedHashMap<>(entries.size());
+        entries.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    /**
+     * 滑动窗口前进一格：清空最旧的一格作为新的当前格，重新估算热点key，取消已冷却的key
+     */
+    private void rotate() {
+        try {
+            int next = (current + 1) % slots.length;
+            AtomicIntegerArray slot = slots[next];
+            for (int i = 0; i < slot.length(); i++) {
+                slot.set(i, 0);
+            }
+            current = next;
+            for (String key : hotKeys.keySet()) {
+                long hash = hash(key);
+                long estimate = estimate((int) hash, (int) (hash >>> 32));
+                if (estimate < threshold / 2) {
+                    hotKeys.remove(key);
+                    demote(key);
+                } else {
+                    hotKeys.put(key, estimate);
+                }
+            }
+        } catch (Exception e) {
+            log.error("热点key窗口滚动失败", e);
+        }
+    }
+
+    private void demote(String key) {
+        localCache.evictHot(key);
+        log.info("热点key已冷却: {}", key);
+    }
+
+    /**
+     * 估算窗口内的访问次数（按采样率折算）：每格取各行最小值，再累加各格
+     */
+    private long estimate(int h1, int h2) {
+        long sum = 0;
+        for (AtomicIntegerArray slot : slots) {
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, slot.get(i * WIDTH + index(h1, h2, i)));
+            }
+            sum += min;
+        }
+        return (long) (sum / sampleRate);
+    }
+
+    private static int index(int h1, int h2, int i) {
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % WIDTH;
+    }
+
+    /**
+     * 64位哈希，高低32位分别作为双重哈希的两个基础哈希
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.utils.cache;
+
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON编解码器，与原有的JSONUtil序列化格式一致
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+    public static final byte ID = 1;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length, Type type) {
+        return JSONUtil.parse(new String(bytes, offset, length, StandardCharsets.UTF_8)).toBean(type, true);
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.utils.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.utils.constant.RedisConstants;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内一级缓存，位于Redis之前
+ * 基于Caffeine实现（W-TinyLFU准入策略，按权重限制容量），缓存的是已经反序列化好的对象，命中时无网络开销、无反序列化开销
+ * 任意节点写入缓存时通过Redis发布订阅广播失效消息，各节点收到后删除本地副本
+ * 另有一块独立的热点区，只存放被{@link HotKeyDetector}判定为热点的key，存活时间短，不受一级缓存开关影响
+ */
+@Slf4j
+@Component
+public class LocalCache {
+    private final StringRedisTemplate stringRedisTemplate;
+
+    //未开启本地缓存时为null
+    private final Cache<String, Entry> cache;
+
+    //热点区，未开启热点探测时为null
+    private final Cache<String, Entry> hotCache;
+
+    public LocalCache(StringRedisTemplate stringRedisTemplate, CacheProperties cacheProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        CacheProperties.Local local = cacheProperties.getLocal();
+        this.cache = !local.isEnabled() ? null : Caffeine.newBuilder()
+                .maximumWeight(local.getMaximumWeight())
+                .weigher((String key, Entry entry) -> entry.getWeight())
+                .expireAfterWrite(local.getExpireAfterWriteSeconds(), TimeUnit.SECONDS)
+                .build();
+        CacheProperties.HotKey hotKey = cacheProperties.getHotKey();
+        this.hotCache = !hotKey.isEnabled() ? null : Caffeine.newBuilder()
+                .maximumSize(hotKey.getMaxHotKeys())
+                .expireAfterWrite(hotKey.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .<String, Entry>build();
+    }
+
+    /**
+     * 一级缓存或热点区任一开启时返回true，此时需要监听失效广播
+     */
+    public boolean isEnabled() {
+        return cache != null || hotCache != null;
+    }
+
+    /**
+     * 查询本地缓存
+     * @param key redis中的key
+     * @param type 期望的数据类型，类型不符时视为未命中
+     * @return 未命中返回null
+     */
+    public Entry get(String key, Class<?> type) {
+        Entry entry = cache == null ? null : cache.getIfPresent(key);
+        if (entry == null && hotCache != null) {
+            entry = hotCache.getIfPresent(key);
+        }
+        if (entry == null || !type.isInstance(entry.getValue())) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 写入本地缓存
+     * @param key redis中的key
+     * @param value 已反序列化的数据
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param weight 数据在Redis中的序列化长度，用于容量控制
+     */
+    public void put(String key, Object value, long expireAt, int weight) {
+        put(key, value, expireAt, 0L, weight);
+    }
+
+    /**
+     * 写入本地缓存
+     * @param key redis中的key
+     * @param value 已反序列化的数据
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param delta 上次重建耗时（毫秒），用于提前刷新
+     * @param weight 数据在Redis中的序列化长度，用于容量控制
+     */
+    public void put(String key, Object value, long expireAt, long delta, int weight) {
+        if (cache == null || value == null) {
+            return;
+        }
+        cache.put(key, new Entry(value, expireAt, delta, Math.max(weight, 1)));
+    }
+
+    /**
+     * 写入热点区
+     * @param key redis中的key
+     * @param value 已反序列化的数据
+     * @param expireAt 逻辑过期时间戳（毫秒），-1表示无逻辑过期
+     * @param delta 上次重建耗时（毫秒），用于提前刷新
+     */
+    public void putHot(String key, Object value, long expireAt, long delta) {
+        if (hotCache == null || value == null) {
+            return;
+        }
+        hotCache.put(key, new Entry(value, expireAt, delta, 1));
+    }
+
+    /**
+     * 从热点区删除，key不再是热点时调用
+     */
+    public void evictHot(String key) {
+        if (hotCache != null) {
+            hotCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 广播失效消息，所有节点（包括本节点）删除对应的本地缓存
+     * @param key redis中的key
+     */
+    public void invalidate(String key) {
+        evict(key);
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
+        } catch (Exception e) {
+            //广播失败时其他节点依靠expireAfterWrite兜底
+            log.error("本地缓存失效广播失败，key: {}", key, e);
+        }
+    }
+
+    /**
+     * 批量广播失效消息，多个key合并为一条消息，以换行符分隔
+     * @param keys redis中的key
+     */
+    public void invalidateAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(this::evict);
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, String.join("\n", keys));
+        } catch (Exception e) {
+            log.error("本地缓存失效广播失败，key数量: {}", keys.size(), e);
+        }
+    }
+
+    /**
+     * 处理失效消息，消息中可能包含多个以换行符分隔的key
+     * @param message 消息内容
+     */
+    public void onInvalidateMessage(String message) {
+        for (String key : message.split("\n")) {
+            evict(key);
+        }
+    }
+
+    /**
+     * 仅删除本节点的本地缓存，由失效消息监听器调用
+     * @param key redis中的key
+     */
+    public void evict(String key) {
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+        evictHot(key);
+    }
+
+    @Getter
+    public static class Entry {
+        private final Object value;
+        private final long expireAt;
+        private final long delta;
+        private final int weight;
+
+        private Entry(Object value, long expireAt, long delta, int weight) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.delta = delta;
+            this.weight = weight;
+        }
+
+        /**
+         * 判断是否已逻辑过期
+         */
+        public boolean isExpired(long nowMillis) {
+            return expireAt >= 0 && expireAt <= nowMillis;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import com.hmdp.utils.constant.RedisConstants;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空值缓存：记录数据库中不存在的数字id，代替每个id一个空字符串key
+ * 按时间分桶、按id分段保存在位图中，key为 cache:negative:{key前缀}{桶号}:{段号}，位偏移为 id % rangeBits，
+ * 整个桶到期后一起过期；内存占用只与id的取值范围有关，与被查询的id个数无关
+ * 写入时同时写当前桶和下一个桶，读取时只读当前桶（一次GETBIT），保证每条记录至少存活一个桶长
+ * 桶长取过期时间策略中的空值过期时间
+ */
+@Component
+public class NegativeCache {
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheTtlPolicy ttlPolicy;
+
+    private final boolean enabled;
+
+    private final int rangeBits;
+
+    public NegativeCache(StringRedisTemplate stringRedisTemplate, CacheTtlPolicy ttlPolicy,
+                         CacheProperties cacheProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttlPolicy = ttlPolicy;
+        CacheProperties.Negative negative = cacheProperties.getNegative();
+        this.enabled = negative.isEnabled();
+        this.rangeBits = negative.getRangeBits();
+    }
+
+    /**
+     * 是否可以用位图记录该id，只支持非负的整数id
+     */
+    public boolean supports(Object id) {
+        return enabled && (id instanceof Long || id instanceof Integer || id instanceof Short)
+                && ((Number) id).longValue() >= 0;
+    }
+
+    /**
+     * 在管道或事务中追加一条GETBIT命令，查询id是否为空值
+     * @param connection 开启了管道的连接
+     * @param prefix redis中的key前缀
+     * @param id 数据库id，需先通过{@link #supports}判断
+     */
+    public void contains(RedisConnection connection, String prefix, Object id) {
+        long value = ((Number) id).longValue();
+        long bucket = currentBucket(prefix);
+        connection.stringCommands().getBit(rawKey(prefix, bucket, value), value % rangeBits);
+    }
+
+    /**
+     * 查询id是否为空值，一次GETBIT
+     */
+    public boolean contains(String prefix, Object id) {
+        long value = ((Number) id).longValue();
+        byte[] key = rawKey(prefix, currentBucket(prefix), value);
+        Boolean bit = stringRedisTemplate.execute(
+                (RedisCallback<Boolean>) connection -> connection.stringCommands().getBit(key, value % rangeBits));
+        return Boolean.TRUE.equals(bit);
+    }
+
+    /**
+     * 在管道中追加命令，把id记录为空值，写入当前桶和下一个桶，并设置桶的过期时间
+     */
+    public void add(RedisConnection connection, String prefix, Object id) {
+        long value = ((Number) id).longValue();
+        long bucketMillis = bucketMillis(prefix);
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        for (long b = bucket; b <= bucket + 1; b++) {
+            byte[] key = rawKey(prefix, b, value);
+            connection.stringCommands().setBit(key, value % rangeBits, true);
+            //桶结束后再保留一个桶长，避免边界上的读取落到已删除的桶
+            connection.keyCommands().pExpireAt(key, (b + 2) * bucketMillis);
+        }
+    }
+
+    /**
+     * 清除id的空值记录，新增数据时调用
+     */
+    public void remove(String prefix, Object id) {
+        long value = ((Number) id).longValue();
+        long bucketMillis = bucketMillis(prefix);
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long b = bucket; b <= bucket + 1; b++) {
+                byte[] key = rawKey(prefix, b, value);
+                connection.stringCommands().setBit(key, value % rangeBits, false);
+                //SETBIT会创建不存在的key，同样需要设置过期时间
+                connection.keyCommands().pExpireAt(key, (b + 2) * bucketMillis);
+            }
+            return null;
+        });
+    }
+
+    private long currentBucket(String prefix) {
+        return System.currentTimeMillis() / bucketMillis(prefix);
+    }
+
+    private long bucketMillis(String prefix) {
+        return TimeUnit.SECONDS.toMillis(ttlPolicy.nullTtlSeconds(prefix));
+    }
+
+    private byte[] rawKey(String prefix, long bucket, long id) {
+        String key = RedisConstants.CACHE_NEGATIVE_KEY + prefix + bucket + ":" + id / rangeBits;
+        return stringRedisTemplate.getStringSerializer().serialize(key);
+    }
+}
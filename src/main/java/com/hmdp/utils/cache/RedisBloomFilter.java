@@ -0,0 +1,273 @@
+package com.hmdp.utils.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import com.hmdp.utils.constant.RedisConstants;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Redis位图实现的布隆过滤器
+ * 位图存放在Redis中，所有节点共享；可选在本地保存一份副本，判断时无需访问Redis
+ * 本地副本通过发布订阅同步新增的id，并定时从Redis全量刷新兜底
+ */
+@Slf4j
+public class RedisBloomFilter implements ExistenceFilter {
+    //每次BITFIELD写入的id数量
+    private static final int PUT_BATCH_SIZE = 500;
+
+    private static final ScheduledExecutorService LOCAL_SYNC_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Getter
+    private final String name;
+
+    //位图的key中带上位数和哈希函数个数，调整参数后使用新的位图，避免新旧参数混用导致误判不存在
+    @Getter
+    private final String redisKey;
+
+    private final String channel;
+
+    @Getter
+    private final long numBits;
+
+    @Getter
+    private final int numHashFunctions;
+
+    @Getter
+    private final double fpp;
+
+    private final boolean localCopy;
+
+    //本地位图副本，未开启时为null
+    private volatile AtomicLongArray localBits;
+
+    //初始数据加载完成前，一律判断为可能存在
+    private volatile boolean ready = false;
+
+    private final LongAdder checkCount = new LongAdder();
+    private final LongAdder rejectCount = new LongAdder();
+    private final LongAdder falsePositiveCount = new LongAdder();
+
+    /**
+     * @param stringRedisTemplate
+     * @param listenerContainer 用于同步本地副本
+     * @param name 过滤器名称
+     * @param expectedInsertions 预计元素数量
+     * @param fpp 期望误判率
+     * @param localCopy 是否在本地保存位图副本
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                            String name, long expectedInsertions, double fpp, boolean localCopy) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.name = name;
+        this.fpp = fpp;
+        this.localCopy = localCopy;
+        //位数 m = -n * ln(p) / (ln2)^2，哈希函数个数 k = m / n * ln2
+        long n = Math.max(expectedInsertions, 1L);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.min(Math.max(m, 64L), Integer.MAX_VALUE);
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        this.redisKey = RedisConstants.BLOOM_FILTER_KEY_PREFIX + name + ":" + numBits + ":" + numHashFunctions;
+        this.channel = RedisConstants.BLOOM_FILTER_CHANNEL_PREFIX + name;
+
+        if (localCopy) {
+            this.localBits = new AtomicLongArray((int) ((numBits + 63) / 64));
+            listenerContainer.addMessageListener(
+                    (message, pattern) -> setLocalBits(offsets(new String(message.getBody(), StandardCharsets.UTF_8))),
+                    new ChannelTopic(channel));
+        }
+    }
+
+    /**
+     * 初始数据加载完成，过滤器开始生效
+     * @param localSyncIntervalSeconds 本地副本全量刷新间隔
+     */
+    public void markReady(long localSyncIntervalSeconds) {
+        if (localCopy) {
+            reloadLocalCopy();
+            LOCAL_SYNC_EXECUTOR.scheduleWithFixedDelay(this::reloadLocalCopy,
+                    localSyncIntervalSeconds, localSyncIntervalSeconds, TimeUnit.SECONDS);
+        }
+        ready = true;
+        log.info("布隆过滤器[{}]已生效，位数: {}，哈希函数个数: {}", name, numBits, numHashFunctions);
+    }
+
+    @Override
+    public boolean mightContain(Object id) {
+        checkCount.increment();
+        if (!ready) {
+            return true;
+        }
+        long[] offsets = offsets(id.toString());
+        boolean contains;
+        try {
+            contains = localBits != null ? containsLocal(offsets) : containsRedis(offsets);
+        } catch (Exception e) {
+            //过滤器不可用时放行，交由缓存空值兜底
+            log.error("布隆过滤器[{}]查询失败", name, e);
+            return true;
+        }
+        if (!contains) {
+            rejectCount.increment();
+        }
+        return contains;
+    }
+
+    @Override
+    public void put(Object id) {
+        putAll(Collections.singletonList(id));
+        if (localCopy) {
+            stringRedisTemplate.convertAndSend(channel, id.toString());
+        }
+    }
+
+    @Override
+    public void putAll(Collection<?> ids) {
+        for (List<?> batch : CollUtil.split(ids, PUT_BATCH_SIZE)) {
+            BitFieldSubCommands subCommands = BitFieldSubCommands.create();
+            for (Object id : batch) {
+                long[] offsets = offsets(id.toString());
+                for (long offset : offsets) {
+                    subCommands = subCommands.set(BitFieldSubCommands.BitFieldType.unsigned(1)).valueAt(offset).to(1);
+                }
+                setLocalBits(offsets);
+            }
+            stringRedisTemplate.opsForValue().bitField(redisKey, subCommands);
+        }
+    }
+
+    @Override
+    public void recordFalsePositive() {
+        falsePositiveCount.increment();
+    }
+
+    public long getCheckCount() {
+        return checkCount.sum();
+    }
+
+    public long getRejectCount() {
+        return rejectCount.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.sum();
+    }
+
+    private boolean containsRedis(long[] offsets) {
+        BitFieldSubCommands subCommands = BitFieldSubCommands.create();
+        for (long offset : offsets) {
+            subCommands = subCommands.get(BitFieldSubCommands.BitFieldType.unsigned(1)).valueAt(offset);
+        }
+        List<Long> bits = stringRedisTemplate.opsForValue().bitField(redisKey, subCommands);
+        if (bits == null) {
+            return true;
+        }
+        for (Long bit : bits) {
+            if (bit == null || bit == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsLocal(long[] offsets) {
+        AtomicLongArray bits = localBits;
+        for (long offset : offsets) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setLocalBits(long[] offsets) {
+        AtomicLongArray bits = localBits;
+        if (bits == null) {
+            return;
+        }
+        for (long offset : offsets) {
+            int index = (int) (offset >>> 6);
+            long mask = 1L << (offset & 63);
+            long word;
+            do {
+                word = bits.get(index);
+            } while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask));
+        }
+    }
+
+    /**
+     * 从Redis全量刷新本地副本，刷新前的本地数据合并保留（布隆过滤器只增不减）
+     */
+    private void reloadLocalCopy() {
+        try {
+            byte[] bytes = stringRedisTemplate.execute(
+                    (RedisCallback<byte[]>) connection -> connection.stringCommands().get(redisKey.getBytes(StandardCharsets.UTF_8)));
+            AtomicLongArray old = localBits;
+            AtomicLongArray bits = new AtomicLongArray(old.length());
+            if (bytes != null) {
+                //Redis位图中第0位是第一个字节的最高位
+                for (int i = 0; i < bytes.length && i / 8 < bits.length(); i++) {
+                    int b = bytes[i] & 0xFF;
+                    for (int j = 0; j < 8 && b != 0; j++) {
+                        if ((b & (0x80 >>> j)) != 0) {
+                            long offset = (long) i * 8 + j;
+                            int index = (int) (offset >>> 6);
+                            bits.set(index, bits.get(index) | (1L << (offset & 63)));
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < old.length(); i++) {
+                bits.set(i, bits.get(i) | old.get(i));
+            }
+            localBits = bits;
+        } catch (Exception e) {
+            log.error("布隆过滤器[{}]本地副本刷新失败", name, e);
+        }
+    }
+
+    /**
+     * 双重哈希计算k个位偏移量：offset_i = h1 + i * h2
+     */
+    private long[] offsets(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        //FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        long hash1 = mix(hash);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        long[] offsets = new long[numHashFunctions];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+        }
+        return offsets;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
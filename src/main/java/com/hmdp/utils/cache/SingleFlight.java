@@ -0,0 +1,63 @@
+package com.hmdp.utils.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 进程内请求合并：同一个key同一时刻只有一个线程执行加载逻辑，其余线程等待其结果
+ * 用于缓存未命中时防止大量并发请求同时打到数据库
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 执行加载逻辑，同一个key的并发调用共享同一次执行结果
+     * @param key 合并的维度，一般为redis中的key
+     * @param loader 加载逻辑
+     * @return 加载结果，可能为null
+     * @param <T>
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, future);
+        if (existing != null) {
+            //已有线程在加载，等待其结果
+            return (T) await(existing);
+        }
+        try {
+            T result = loader.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    /**
+     * 当前正在进行中的加载数量
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
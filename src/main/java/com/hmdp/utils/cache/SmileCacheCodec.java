@@ -0,0 +1,52 @@
+package com.hmdp.utils.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Smile（二进制JSON）编解码器，字段名去重、数值按二进制存储，体积和解析开销都小于文本JSON
+ */
+@Component
+public class SmileCacheCodec implements CacheCodec {
+    public static final byte ID = 2;
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory())
+            .registerModule(new JavaTimeModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "smile";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存数据序列化失败", e);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length, Type type) {
+        try {
+            return objectMapper.readValue(bytes, offset, length, objectMapper.constructType(type));
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存数据反序列化失败", e);
+        }
+    }
+}
@@ -10,11 +10,45 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_SHOP_LOGICAL_TTL = 20L;
+    public static final String CACHE_SHOP_HASH_KEY = "cache:shop_hash:";
+    public static final String SHOP_COUNTER_DELTA_KEY = "shop:counter:delta";
+    public static final String SHOP_COUNTER_FLUSHING_KEY = "shop:counter:flushing";
+    public static final String SHOP_COUNTER_FLUSH_SEQ_KEY = "shop:counter:flush_seq";
+    public static final String SHOP_COUNTER_FLUSH_GEN_KEY = "shop:counter:flush_gen";
+    public static final String LOCK_SHOP_COUNTER_FLUSH_NAME = "shop:counter:flush";
+    public static final Long LOCK_SHOP_COUNTER_FLUSH_TTL = 60L;
     public static final String CACHE_SHOP_LIST_KEY = "cache:shop_list";
+    public static final String CACHE_SHOP_LIST_VERSION_KEY = "cache:shop_list:version";
+    public static final String CACHE_SHOP_LIST_CHANNEL = "cache:shop_list:refresh";
+    public static final Long CACHE_SHOP_LIST_VERSION_CHECK_INTERVAL = 30L;
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final Long LOCK_CACHE_REBUILD_TTL = 10L;
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final String CACHE_NEGATIVE_KEY = "cache:negative:";
+
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    //以下过期时间用于注解属性，需为基本类型常量
+    public static final long CACHE_BLOG_TTL = 10L;
+    public static final long CACHE_BLOG_HARD_TTL = 60L;
+    public static final String CACHE_USER_INFO_KEY = "cache:user_info:";
+    public static final long CACHE_USER_INFO_TTL = 30L;
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:shop_voucher:";
+    public static final long CACHE_SHOP_VOUCHER_TTL = 1L;
+    public static final long CACHE_SHOP_VOUCHER_HARD_TTL = 10L;
+
+    public static final String BLOOM_FILTER_KEY_PREFIX = "bloom:";
+    public static final String BLOOM_FILTER_CHANNEL_PREFIX = "bloom:put:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_META_KEY = "seckill:meta:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold_out";
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_DLQ_KEY = "stream.orders.dlq";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
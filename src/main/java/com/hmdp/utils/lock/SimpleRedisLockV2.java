@@ -23,10 +23,16 @@ public class SimpleRedisLockV2 implements ILock{
 
     private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
 
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
     static {
         UNLOCK_SCRIPT = new DefaultRedisScript<>();
         UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
         UNLOCK_SCRIPT.setResultType(Long.class);
+
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lock_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
     }
 
 
@@ -48,6 +54,21 @@ public class SimpleRedisLockV2 implements ILock{
         return Boolean.TRUE.equals(success);
     }
 
+    /**
+     * 锁续期，用于持锁时间可能超过过期时间的任务
+     * @param timeoutSeconds 新的过期时间（单位：秒）
+     * @return 锁是否仍由当前线程持有，返回false时锁已过期或被其他线程获取
+     */
+    public boolean renew(long timeoutSeconds) {
+        String threadId = machineId + "-" + Thread.currentThread().getId();
+        Long result = stringRedisTemplate.execute(
+                RENEW_SCRIPT,
+                Collections.singletonList(lockKey),
+                threadId, String.valueOf(timeoutSeconds)
+        );
+        return result != null && result == 1L;
+    }
+
     @Override
     public void unlock() {
         String threadId = machineId + "-" + Thread.currentThread().getId();
@@ -0,0 +1,419 @@
+package com.hmdp.utils.seckill;
+
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.constant.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀下单消息消费者，从 stream.orders 批量读取消息并写入数据库
+ * 每个实例启动workers个消费线程，每个线程是消费者组内一个独立的消费者，名为 {实例标识}-{线程序号}，
+ * 消息在各实例、各线程之间分摊，吞吐量随核数和实例数增长；启动时自动创建消费者组（XGROUP CREATE MKSTREAM）
+ * 读到第一条消息后最多再等待batchWaitMillis凑批，凑够batchSize条立即处理；
+ * 一批订单按优惠券多行INSERT写入（跳过重复的订单），库存按实际写入的行数合并扣减，与订单在同一个事务中提交，提交后一次XACK确认整批消息；
+ * 重复投递的消息不会重复下单、重复扣减库存
+ * 处理失败的消息留在pending队列中，由独立的恢复线程定时扫描（XPENDING），认领空闲超过claimIdleMillis的消息（XCLAIM）重新处理；
+ * 投递maxDeliveries次仍未处理成功的消息连同失败原因写入死信队列 stream.orders.dlq，不再重试
+ * 停机时先停止读取新消息，等待各线程处理完当前批次并确认后再退出
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+    //Redis不可用等异常时，消费线程暂停的时间，避免空转
+    private static final long ERROR_BACKOFF_MILLIS = 1000L;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final String group;
+
+    private final String instanceId;
+
+    private final int workers;
+
+    private final int batchSize;
+
+    private final long batchWaitMillis;
+
+    private final long idleBlockMillis;
+
+    private final long shutdownTimeoutMillis;
+
+    private final long recoveryIntervalMillis;
+
+    private final long claimIdleMillis;
+
+    private final int maxDeliveries;
+
+    private final String recoveryConsumerName;
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService recoveryExecutor;
+
+    private volatile boolean running = true;
+
+    public SeckillOrderConsumer(StringRedisTemplate stringRedisTemplate, IVoucherOrderService voucherOrderService,
+                                SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherOrderService = voucherOrderService;
+        SeckillProperties.Consumer consumer = seckillProperties.getConsumer();
+        this.group = consumer.getGroup();
+        this.instanceId = StrUtil.isNotBlank(consumer.getInstanceId())
+                ? consumer.getInstanceId() : NetUtil.getLocalHostName() + ":" + RuntimeUtil.getPid();
+        this.workers = Math.max(consumer.getWorkers(), 1);
+        this.batchSize = Math.max(consumer.getBatchSize(), 1);
+        this.batchWaitMillis = Math.max(consumer.getBatchWaitMillis(), 0L);
+        this.idleBlockMillis = Math.max(consumer.getIdleBlockMillis(), 1L);
+        this.shutdownTimeoutMillis = consumer.getShutdownTimeoutMillis();
+        this.recoveryIntervalMillis = Math.max(consumer.getRecoveryIntervalMillis(), 1L);
+        this.claimIdleMillis = consumer.getClaimIdleMillis();
+        this.maxDeliveries = Math.max(consumer.getMaxDeliveries(), 1);
+        this.recoveryConsumerName = instanceId + "-recovery";
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "seckill-order-consumer-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.recoveryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        createGroup();
+        for (int i = 0; i < workers; i++) {
+            String consumerName = instanceId + "-" + i;
+            executor.submit(() -> consume(consumerName));
+        }
+        //启动时立即扫描一次，尽快接管宕机实例留下的消息
+        recoveryExecutor.scheduleWithFixedDelay(this::recoverPendingList, 0, recoveryIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("下单消息消费者已启动，消费者组：{}，消费者：{}-[0, {})", group, instanceId, workers);
+    }
+
+    /**
+     * 停止读取新消息，等待各线程处理完当前批次、恢复线程处理完正在恢复的消息并确认
+     * 阻塞读取最多等待idleBlockMillis，超时时间需大于该值
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        recoveryExecutor.shutdown();
+        executor.shutdown();
+        long timeoutMillis = idleBlockMillis + shutdownTimeoutMillis;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.warn("下单消息消费者未能在{}ms内停止，未确认的消息留在pending队列中", timeoutMillis);
+            executor.shutdownNow();
+        }
+        //两个线程池共用同一个超时时间
+        long remaining = Math.max(deadline - System.currentTimeMillis(), 0L);
+        if (!recoveryExecutor.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+            log.warn("下单消息恢复线程未能在{}ms内停止，未确认的消息留在pending队列中", timeoutMillis);
+            recoveryExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 创建消费者组，stream不存在时一并创建；消费者组已存在时忽略
+     * 从头开始消费，建组前已写入的下单消息同样会被处理
+     * 创建失败时不影响启动，消费线程读取时发现消费者组不存在会再次创建
+     */
+    private void createGroup() {
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(RedisConstants.SECKILL_ORDER_STREAM_KEY);
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(rawKey, group, ReadOffset.from("0"), true));
+            log.info("已创建消费者组：{}", group);
+        } catch (Exception e) {
+            if (!hasErrorCode(e, "BUSYGROUP")) {
+                log.error("创建消费者组失败：{}", group, e);
+            }
+        }
+    }
+
+    /**
+     * Redis返回的错误信息是否包含指定错误码，错误信息可能被包装在多层异常中
+     */
+    private static boolean hasErrorCode(Throwable e, String code) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void consume(String consumerName) {
+        while (running) {
+            List<MapRecord<String, Object, Object>> batch = Collections.emptyList();
+            try {
+                batch = readBatch(consumerName);
+                if (batch.isEmpty()) {
+                    //没有消息，直接开启下一轮循环
+                    continue;
+                }
+                process(batch);
+            } catch (Exception e) {
+                if (hasErrorCode(e, "NOGROUP")) {
+                    //stream或消费者组被删除，重新创建
+                    createGroup();
+                    continue;
+                }
+                //消息处理异常，整批消息留在pending队列中，由恢复任务认领后重新处理
+                log.error("下单消息批量处理异常，消费者：{}，消息数：{}", consumerName, batch.size(), e);
+                if (batch.isEmpty()) {
+                    //读取失败，通常是Redis不可用，暂停后重试
+                    sleep(ERROR_BACKOFF_MILLIS);
+                }
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * 读取一批新消息
+     * 没有消息时阻塞idleBlockMillis后返回空列表；读到消息后继续读取，直到凑够batchSize条或等待超过batchWaitMillis
+     * 已读到的消息即使在停机过程中也会返回并处理，不会只读取不确认
+     */
+    private List<MapRecord<String, Object, Object>> readBatch(String consumerName) {
+        List<MapRecord<String, Object, Object>> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+        while (batch.size() < batchSize) {
+            long blockMillis = idleBlockMillis;
+            if (!batch.isEmpty()) {
+                blockMillis = deadline - System.currentTimeMillis();
+                if (blockMillis <= 0 || !running) {
+                    break;
+                }
+            }
+            //BLOCK为0表示一直阻塞，上面已保证blockMillis大于0
+            List<MapRecord<String, Object, Object>> read = stringRedisTemplate.opsForStream().read(
+                    Consumer.from(group, consumerName),
+                    StreamReadOptions.empty().count(batchSize - batch.size()).block(Duration.ofMillis(blockMillis)),
+                    StreamOffset.create(RedisConstants.SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed())
+            );
+            if (read == null || read.isEmpty()) {
+                break;
+            }
+            if (batch.isEmpty()) {
+                deadline = System.currentTimeMillis() + batchWaitMillis;
+            }
+            batch.addAll(read);
+        }
+        return batch;
+    }
+
+    /**
+     * 恢复任务：按id顺序扫描消费者组的pending队列，认领空闲超过claimIdleMillis的消息重新处理
+     * 包括处理失败的批次和已宕机实例未确认的消息；在独立线程中执行，不阻塞消费线程
+     */
+    void recoverPendingList() {
+        try {
+            Range<String> range = Range.unbounded();
+            while (running) {
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(RedisConstants.SECKILL_ORDER_STREAM_KEY, group, range, batchSize);
+                if (pending.isEmpty()) {
+                    break;
+                }
+                Map<RecordId, Long> deliveries = new LinkedHashMap<>();
+                for (PendingMessage message : pending) {
+                    if (message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+                        deliveries.put(message.getId(), message.getTotalDeliveryCount());
+                    }
+                }
+                if (!deliveries.isEmpty()) {
+                    recover(deliveries);
+                }
+                if (pending.size() < batchSize) {
+                    break;
+                }
+                //从本页最后一条消息之后继续扫描
+                RecordId last = pending.get(pending.size() - 1).getId();
+                range = Range.rightUnbounded(Range.Bound.inclusive(
+                        RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+            }
+        } catch (Exception e) {
+            if (hasErrorCode(e, "NOGROUP")) {
+                createGroup();
+                return;
+            }
+            log.error("pending队列恢复异常", e);
+        }
+    }
+
+    /**
+     * 认领并重新处理一批消息
+     * 先整批处理，失败后逐条处理，把无法处理的消息与正常消息隔离开；
+     * 投递次数达到maxDeliveries仍未处理成功的消息转入死信队列，不再重试
+     * @param deliveries 消息id -> 认领前的投递次数
+     */
+    private void recover(Map<RecordId, Long> deliveries) {
+        //XCLAIM同样检查空闲时间，多个实例同时恢复时每条消息只会被其中一个认领
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(RedisConstants.SECKILL_ORDER_STREAM_KEY);
+        RecordId[] ids = deliveries.keySet().toArray(new RecordId[0]);
+        List<ByteRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(rawKey, group, recoveryConsumerName, Duration.ofMillis(claimIdleMillis), ids));
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+        List<MapRecord<String, String, String>> records = new ArrayList<>(claimed.size());
+        for (ByteRecord record : claimed) {
+            MapRecord<String, String, String> mapRecord = record.deserialize(stringRedisTemplate.getStringSerializer());
+            long delivered = deliveries.getOrDefault(mapRecord.getId(), 0L);
+            if (retriesExhausted(delivered)) {
+                //认领前已投递maxDeliveries次都没有确认，通常是处理过程中进程退出，不再处理
+                deadLetter(mapRecord, delivered, "超过最大投递次数：" + maxDeliveries);
+            } else {
+                records.add(mapRecord);
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            process(records);
+            log.info("已恢复pending队列中的{}条下单消息", records.size());
+            return;
+        } catch (Exception e) {
+            log.warn("恢复的下单消息批量处理失败，改为逐条处理，消息数：{}", records.size(), e);
+        }
+        for (MapRecord<String, String, String> record : records) {
+            try {
+                process(Collections.singletonList(record));
+            } catch (Exception e) {
+                //认领本身计一次投递
+                long delivered = deliveries.getOrDefault(record.getId(), 0L) + 1;
+                if (retriesExhausted(delivered)) {
+                    deadLetter(record, delivered, ExceptionUtil.getRootCauseMessage(e));
+                } else {
+                    log.warn("下单消息处理失败，等待下次重试，消息id：{}，投递次数：{}", record.getId(), delivered, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 投递次数是否已用完，认领前和处理失败后使用同一规则：每条消息最多投递maxDeliveries次
+     * @param delivered 已投递的次数
+     */
+    private boolean retriesExhausted(long delivered) {
+        return delivered >= maxDeliveries;
+    }
+
+    /**
+     * 把消息连同失败原因写入死信队列，再从pending队列中确认，由人工排查处理
+     */
+    private void deadLetter(MapRecord<String, ?, ?> record, long delivered, String cause) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        record.getValue().forEach((field, value) -> fields.put(String.valueOf(field), String.valueOf(value)));
+        fields.put("sourceId", record.getId().getValue());
+        fields.put("deliveries", String.valueOf(delivered));
+        fields.put("cause", String.valueOf(cause));
+        stringRedisTemplate.opsForStream().add(RedisConstants.SECKILL_ORDER_DLQ_KEY, fields);
+        stringRedisTemplate.opsForStream().acknowledge(RedisConstants.SECKILL_ORDER_STREAM_KEY, group, record.getId());
+        log.error("下单消息转入死信队列，消息id：{}，投递次数：{}，原因：{}", record.getId(), delivered, cause);
+    }
+
+    /**
+     * 解析一批消息并保存订单，事务提交后一次确认整批消息
+     * 缺少订单id、用户id、优惠券id的消息永远无法处理，直接转入死信队列，不写入数据库、不扣减库存
+     */
+    private void process(List<? extends MapRecord<String, ?, ?>> records) {
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        List<RecordId> ids = new ArrayList<>(records.size());
+        for (MapRecord<String, ?, ?> record : records) {
+            VoucherOrder order = toVoucherOrder(record.getValue());
+            if (order == null) {
+                deadLetter(record, 1, "消息缺少订单id、用户id或优惠券id");
+                continue;
+            }
+            orders.add(order);
+            ids.add(record.getId());
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        voucherOrderService.createVoucherOrders(orders);
+
+        //消息处理成功，发送ACK
+        stringRedisTemplate.opsForStream().acknowledge(
+                RedisConstants.SECKILL_ORDER_STREAM_KEY, group, ids.toArray(new RecordId[0]));
+    }
+
+    /**
+     * 把下单消息转换为订单，订单id、用户id、优惠券id必须是正整数
+     * @return 消息不完整时返回null
+     */
+    static VoucherOrder toVoucherOrder(Map<?, ?> value) {
+        Long id = parseId(value.get("id"));
+        Long userId = parseId(value.get("userId"));
+        Long voucherId = parseId(value.get("voucherId"));
+        if (id == null || userId == null || voucherId == null) {
+            return null;
+        }
+        VoucherOrder order = new VoucherOrder();
+        order.setId(id);
+        order.setUserId(userId);
+        order.setVoucherId(voucherId);
+        return order;
+    }
+
+    private static Long parseId(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            long id = Long.parseLong(value.toString());
+            return id > 0 ? id : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
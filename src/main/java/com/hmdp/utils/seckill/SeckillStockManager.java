@@ -0,0 +1,193 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.utils.constant.RedisConstants;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀券在Redis中的元数据和库存
+ * 元数据 seckill:meta:{券id} 为哈希，shards为库存分片数，begin、end为秒杀开始、结束的毫秒时间戳，
+ * 下单脚本读取元数据校验秒杀时段，下单时不再查询数据库
+ * 未分片时库存保存在 seckill:stock:{券id}，一人一单记录保存在 seckill:order:{券id}；
+ * 分片时第n片的库存和下单用户分别保存在 seckill:stock:{券id:n}、seckill:order:{券id:n}，
+ * 同一分片的两个key带相同的hash tag，位于同一个slot，下单脚本每次只操作一个分片
+ */
+@Component
+public class SeckillStockManager {
+    private static final String META_SHARDS = "shards";
+
+    private static final String META_BEGIN = "begin";
+
+    private static final String META_END = "end";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final int stockShards;
+
+    //券id -> 分片数，分片数在创建时确定，之后不再变化
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public SeckillStockManager(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.stockShards = Math.max(seckillProperties.getStockShards(), 1);
+    }
+
+    /**
+     * 写入新建秒杀券的元数据和库存，库存按配置的分片数拆分，余数分给前面的分片
+     * @param voucher 秒杀券信息
+     */
+    public void initStock(SeckillVoucher voucher) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            Long voucherId = voucher.getVoucherId();
+            Map<byte[], byte[]> meta = new HashMap<>(4);
+            meta.put(raw(META_SHARDS), raw(String.valueOf(stockShards)));
+            meta.put(raw(META_BEGIN), raw(toEpochMillis(voucher.getBeginTime())));
+            meta.put(raw(META_END), raw(toEpochMillis(voucher.getEndTime())));
+            connection.hashCommands().hMSet(raw(RedisConstants.SECKILL_META_KEY + voucherId), meta);
+            for (int shard = 0; shard < stockShards; shard++) {
+                connection.stringCommands().set(raw(stockKey(voucherId, shard, stockShards)),
+                        raw(String.valueOf(split(voucher.getStock(), shard, stockShards))));
+            }
+            return null;
+        });
+        shardCounts.put(voucher.getVoucherId(), stockShards);
+    }
+
+    /**
+     * 在管道中追加命令，补写元数据和库存，已有的字段和库存key不覆盖；用于Redis数据丢失后的预热
+     * 依次执行3条HSETNX和每个分片1条SETNX
+     * @param connection 开启了管道的连接
+     * @param voucher 秒杀券信息，库存为数据库中的库存
+     * @param shards 分片数，见{@link #loadShards}
+     */
+    public void restore(RedisConnection connection, SeckillVoucher voucher, int shards) {
+        Long voucherId = voucher.getVoucherId();
+        byte[] metaKey = raw(RedisConstants.SECKILL_META_KEY + voucherId);
+        connection.hashCommands().hSetNX(metaKey, raw(META_SHARDS), raw(String.valueOf(shards)));
+        connection.hashCommands().hSetNX(metaKey, raw(META_BEGIN), raw(toEpochMillis(voucher.getBeginTime())));
+        connection.hashCommands().hSetNX(metaKey, raw(META_END), raw(toEpochMillis(voucher.getEndTime())));
+        for (int shard = 0; shard < shards; shard++) {
+            connection.stringCommands().setNX(raw(stockKey(voucherId, shard, shards)),
+                    raw(String.valueOf(split(voucher.getStock(), shard, shards))));
+        }
+    }
+
+    /**
+     * 批量读取秒杀券的分片数，元数据已丢失的券按当前配置的分片数
+     * @return 券id -> 分片数
+     */
+    public Map<Long, Integer> loadShards(List<Long> voucherIds) {
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long voucherId : voucherIds) {
+                connection.hashCommands().hGet(raw(RedisConstants.SECKILL_META_KEY + voucherId), raw(META_SHARDS));
+            }
+            return null;
+        });
+        Map<Long, Integer> shards = new HashMap<>(voucherIds.size());
+        for (int i = 0; i < voucherIds.size(); i++) {
+            Object value = values.get(i);
+            shards.put(voucherIds.get(i), value == null ? stockShards : Integer.parseInt(value.toString()));
+        }
+        return shards;
+    }
+
+    /**
+     * 秒杀券的分片数，第一次读取元数据后缓存在本地；元数据不存在时按未分片处理，且不缓存
+     */
+    public int shardsOf(Long voucherId) {
+        Integer shards = shardCounts.get(voucherId);
+        if (shards != null) {
+            return shards;
+        }
+        Object value = stringRedisTemplate.opsForHash().get(RedisConstants.SECKILL_META_KEY + voucherId, META_SHARDS);
+        if (value == null) {
+            return 1;
+        }
+        shards = Math.max(Integer.parseInt(value.toString()), 1);
+        shardCounts.put(voucherId, shards);
+        return shards;
+    }
+
+    /**
+     * 用户所在的分片，由用户id的哈希决定，同一用户总是落在同一分片
+     */
+    public static int homeShard(Long userId, int shards) {
+        //Fibonacci散列，连续的用户id也能均匀分布
+        return Math.floorMod(Long.hashCode(userId) * 0x9E3779B9, shards);
+    }
+
+    /**
+     * 分片的库存key，未分片时为 seckill:stock:{券id}
+     */
+    public static String stockKey(Long voucherId, int shard, int shards) {
+        return shardKey(RedisConstants.SECKILL_STOCK_KEY, voucherId, shard, shards);
+    }
+
+    /**
+     * 分片的下单用户key，未分片时为 seckill:order:{券id}
+     */
+    public static String orderKey(Long voucherId, int shard, int shards) {
+        return shardKey(RedisConstants.SECKILL_ORDER_KEY, voucherId, shard, shards);
+    }
+
+    /**
+     * 在用户所在分片记录下单用户，用于从相邻分片购买成功之后，保证该分片补充库存后也不能再次下单
+     */
+    public void markBuyer(Long voucherId, int shard, int shards, Long userId) {
+        stringRedisTemplate.opsForSet().add(orderKey(voucherId, shard, shards), userId.toString());
+    }
+
+    /**
+     * 补充库存，分片的券按分片数拆分补充的数量
+     * @param voucherId 优惠券id
+     * @param amount 补充的数量
+     */
+    public void addStock(Long voucherId, int amount) {
+        int shards = shardsOf(voucherId);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int shard = 0; shard < shards; shard++) {
+                int shardAmount = split(amount, shard, shards);
+                if (shardAmount > 0) {
+                    connection.stringCommands().incrBy(raw(stockKey(voucherId, shard, shards)), shardAmount);
+                }
+            }
+            return null;
+        });
+    }
+
+    private static String shardKey(String prefix, Long voucherId, int shard, int shards) {
+        if (shards <= 1) {
+            return prefix + voucherId;
+        }
+        return prefix + "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 第shard片分到的数量，余数分给前面的分片
+     */
+    private static int split(int total, int shard, int shards) {
+        return total / shards + (shard < total % shards ? 1 : 0);
+    }
+
+    /**
+     * 秒杀时段按服务器时区转换为毫秒时间戳，与下单脚本中Redis的TIME比较
+     */
+    private static String toEpochMillis(LocalDateTime time) {
+        return String.valueOf(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    private byte[] raw(String value) {
+        return stringRedisTemplate.getStringSerializer().serialize(value);
+    }
+}
@@ -0,0 +1,85 @@
+package com.hmdp.utils.seckill;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.utils.constant.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本节点的秒杀券售罄标记，已售罄的券在本地直接拒绝下单，不再生成订单id、执行下单脚本
+ * 下单脚本第一次返回售罄时标记，并通过 seckill:sold_out 频道广播给其他节点；补充库存时清除标记并广播
+ * 消息内容为 +{券id}（售罄）或 -{券id}（恢复销售）
+ * 标记写入后soldOutTtlSeconds过期，过期后的第一次下单重新由脚本判断，兜底丢失的广播和补库存前后的并发标记
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final Cache<Long, Boolean> soldOut;
+
+    public SoldOutRegistry(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties,
+                           RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.soldOut = Caffeine.newBuilder()
+                .expireAfterWrite(seckillProperties.getSoldOutTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 本节点是否已标记售罄，无Redis访问
+     */
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.getIfPresent(voucherId) != null;
+    }
+
+    /**
+     * 标记售罄并广播，本节点已有标记时不再重复广播
+     */
+    public void markSoldOut(Long voucherId) {
+        if (soldOut.asMap().putIfAbsent(voucherId, Boolean.TRUE) == null) {
+            publish("+" + voucherId);
+        }
+    }
+
+    /**
+     * 清除售罄标记并广播，补充或重置库存后调用
+     */
+    public void clear(Long voucherId) {
+        soldOut.invalidate(voucherId);
+        publish("-" + voucherId);
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, message);
+        } catch (Exception e) {
+            //广播失败时其他节点依靠下单脚本判断，或等待标记过期
+            log.error("售罄标记广播失败，消息：{}", message, e);
+        }
+    }
+
+    private void onMessage(String message) {
+        try {
+            Long voucherId = Long.valueOf(message.substring(1));
+            if (message.charAt(0) == '+') {
+                soldOut.put(voucherId, Boolean.TRUE);
+            } else {
+                soldOut.invalidate(voucherId);
+            }
+        } catch (Exception e) {
+            log.error("售罄标记消息格式错误：{}", message, e);
+        }
+    }
+}
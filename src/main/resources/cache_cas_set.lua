@@ -0,0 +1,68 @@
+---
+--- 带版本号的缓存写入：Redis中已有更新版本的数据时拒绝覆盖
+--- 二进制格式的版本号位于头部第17~24字节（大端序），JSON格式的版本号为RedisData的version字段
+--- 版本号 = 数据版本号*2，写穿的数据再加1。数据版本号只精确到秒时，同一秒内的重建可能读到更新前的数据，
+--- 因此重建遇到同一数据版本号、尚未逻辑过期的写穿数据时也拒绝覆盖；写穿数据逻辑过期后照常由重建续期
+---
+-- 缓存key
+local key = KEYS[1]
+-- 新数据
+local newValue = ARGV[1]
+-- 新数据的版本号
+local newVersion = tonumber(ARGV[2])
+-- 物理过期时间（毫秒），小于等于0表示不过期
+local ttl = tonumber(ARGV[3])
+-- 是否为写穿，1：写穿 0：重建
+local writeThrough = ARGV[4] == '1'
+-- 当前时间戳（毫秒），用于判断已有数据是否逻辑过期
+local now = tonumber(ARGV[5])
+
+local current = redis.call('GET', key)
+-- 不存在或为空值时直接写入
+if(current and #current > 0)
+    then
+    local currentVersion = 0
+    -- 已有数据的逻辑过期时间，-1表示无逻辑过期
+    local expireAt = -1
+    if(string.byte(current, 1) == 0xCE and string.byte(current, 2) >= 24)
+        then
+        for i = 17, 24 do
+            currentVersion = currentVersion * 256 + string.byte(current, i)
+        end
+        -- 逻辑过期时间位于第5~12字节，最高位为1时是-1
+        if(string.byte(current, 5) < 128)
+            then
+            expireAt = 0
+            for i = 5, 12 do
+                expireAt = expireAt * 256 + string.byte(current, i)
+            end
+        end
+    elseif(string.byte(current, 1) == 123)
+        then
+        local ok, data = pcall(cjson.decode, current)
+        if(ok and type(data) == 'table')
+            then
+            if(type(data['version']) == 'number')
+                then currentVersion = data['version']
+            end
+            if(type(data['expireTime']) == 'number')
+                then expireAt = data['expireTime']
+            end
+        end
+    end
+    local stale = currentVersion > newVersion
+    -- 重建遇到同一数据版本号的写穿数据：已逻辑过期时允许覆盖续期，否则拒绝
+    if(not writeThrough and currentVersion == newVersion + 1 and expireAt >= 0 and expireAt <= now)
+        then stale = false
+    end
+    if(stale)
+        then return 0
+    end
+end
+
+if(ttl > 0)
+    then redis.call('SET', key, newValue, 'PX', ttl)
+else
+    redis.call('SET', key, newValue)
+end
+return 1
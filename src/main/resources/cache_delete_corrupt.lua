@@ -0,0 +1,13 @@
+---
+--- 删除无法解析的缓存数据：仅当缓存值仍是读取到的数据时删除，不影响其他线程刚写入的新数据
+---
+-- 缓存key
+local key = KEYS[1]
+-- 读取到的数据
+local corruptValue = ARGV[1]
+
+if(redis.call('GET', key) ~= corruptValue)
+    then return 0
+end
+redis.call('DEL', key)
+return 1
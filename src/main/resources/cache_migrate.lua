@@ -0,0 +1,21 @@
+---
+--- 缓存格式迁移：仅当缓存值未被其他线程修改时，重写为新格式并保留剩余过期时间
+---
+-- 缓存key
+local key = KEYS[1]
+-- 读取到的旧格式数据
+local oldValue = ARGV[1]
+-- 新格式数据
+local newValue = ARGV[2]
+
+if(redis.call('GET', key) ~= oldValue)
+    then return 0
+end
+
+local ttl = redis.call('PTTL', key)
+if(ttl > 0)
+    then redis.call('SET', key, newValue, 'PX', ttl)
+else
+    redis.call('SET', key, newValue)
+end
+return 1
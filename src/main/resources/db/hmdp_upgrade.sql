@@ -0,0 +1,21 @@
+/*
+ 已有数据库的结构升级，按顺序执行尚未执行过的部分
+ 新建数据库直接执行 hmdp.sql，不需要执行本文件
+*/
+
+SET NAMES utf8mb4;
+
+-- ----------------------------
+-- 店铺计数器写回批次号：写回中断后重新执行同一批次时跳过已累加过的店铺
+-- ----------------------------
+ALTER TABLE `tb_shop`
+  ADD COLUMN `counter_flush_gen` bigint(20) UNSIGNED NOT NULL DEFAULT 0 COMMENT '最后累加的计数器写回批次号' AFTER `update_time`;
+
+-- ----------------------------
+-- 秒杀订单一人一单：(用户id, 优惠券id)唯一，重复投递的下单消息不会重复写入订单
+-- 添加前需先清理已有的重复订单，否则添加失败
+-- 已按旧版 hmdp.sql 建立了拼写错误的 uniqe_key_user_voucher 索引时，改为执行：
+-- ALTER TABLE `tb_voucher_order` RENAME INDEX `uniqe_key_user_voucher` TO `unique_key_user_voucher`;
+-- ----------------------------
+ALTER TABLE `tb_voucher_order`
+  ADD UNIQUE INDEX `unique_key_user_voucher`(`user_id`, `voucher_id`) USING BTREE;
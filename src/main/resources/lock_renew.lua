@@ -0,0 +1,14 @@
+---
+--- 锁续期：锁仍由当前线程持有时重新设置过期时间
+---
+-- 锁key
+local lockKey = KEYS[1]
+-- 线程标识
+local threadId = ARGV[1]
+-- 过期时间（秒）
+local ttl = ARGV[2]
+
+if(redis.call('GET', lockKey) == threadId) then
+    return redis.call('EXPIRE', lockKey, ttl)
+end
+return 0
@@ -3,6 +3,13 @@
 --- Created by Evin.
 --- DateTime: 2024/11/29 15:49
 ---
+--- 在一个库存分片上判断下单资格，分片由调用方按用户id选择，本分片售罄时由调用方尝试下一个分片
+--- 返回 0：下单成功 1：本分片售罄 2：重复下单 3：未开始 4：已结束 5：库存key不存在
+---
+-- 分片的库存Key，未分片时为 seckill:stock:{券id}
+local stockKey = KEYS[1]
+-- 分片的下单用户Key，与库存Key位于同一slot
+local orderKey = KEYS[2]
 -- 优惠券id
 local voucherId = ARGV[1]
 -- 用户id
@@ -10,24 +17,40 @@ local userId = ARGV[2]
 --订单id
 local orderId = ARGV[3]
 
--- 优惠券库存Key
-local stockKey = 'seckill:stock:' .. voucherId
--- 优惠券下单用户Key
-local orderKey = 'seckill:order:' .. voucherId
+-- 按命令复制脚本的写操作，调用TIME之后才能继续写入
+redis.replicate_commands()
 
--- 判断优惠券库存是否充足
-if(tonumber(redis.call('GET', stockKey)) < 1)
-    then return 1
+-- 优惠券元数据：秒杀开始时间、结束时间（毫秒），缺少的字段不校验
+local meta = redis.call('HMGET', 'seckill:meta:' .. voucherId, 'begin', 'end')
+
+-- 使用Redis服务器时间判断秒杀时段，不受各应用节点时钟偏差影响
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if(meta[1] and now < tonumber(meta[1]))
+    then return 3
+end
+if(meta[2] and now > tonumber(meta[2]))
+    then return 4
 end
 
--- 判断是否满足一人一单
+-- 判断是否满足一人一单，先于库存判断：已在本分片下单的用户在分片售罄后也不再尝试其他分片
 if(redis.call('sismember', orderKey, userId) == 1)
     then return 2;
 end
+
+local stock = redis.call('GET', stockKey)
+-- 库存key不存在：优惠券不存在，或Redis数据丢失后尚未预热，不能当作售罄
+if(not stock)
+    then return 5
+end
+-- 判断优惠券库存是否充足
+if(tonumber(stock) < 1)
+    then return 1
+end
 -- 扣减库存
 redis.call('incrby', stockKey, -1)
 -- 保存下单用户
 redis.call('sadd', orderKey, userId)
 -- 发送消息 这里订单id的key要设成id，便于后续BeanUtils将Map转化为VoucherOrder
 redis.call('XADD', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId);
-return 0
\ No newline at end of file
+return 0
@@ -0,0 +1,53 @@
+---
+--- 计数器增量写回数据库的开始与结束
+--- 开始：待写回的增量改名为写回中的增量（上次写回未完成时继续处理上次的数据），写回序号变为新的奇数并返回，
+---       每次开始得到的序号都不同，作为本次写回的标识；
+---       改名时生成新的写回批次号（毫秒时间戳，且大于上一个批次号），继续处理上次的数据时批次号不变，
+---       数据库按批次号跳过已累加过这一批增量的店铺，提交后、删除增量前中断也不会重复累加
+--- 结束：写回序号仍为本次写回的序号时，删除写回中的增量，写回序号变为偶数；
+---       序号已变化说明锁过期后其他节点开始了新的写回，不做任何修改
+---
+-- 待写回数据库的增量
+local deltaKey = KEYS[1]
+-- 写回中的增量
+local flushingKey = KEYS[2]
+-- 写回序号
+local seqKey = KEYS[3]
+-- 写回批次号
+local genKey = KEYS[4]
+-- begin 或 end
+local stage = ARGV[1]
+
+-- 批次号使用Redis的时间，Redis数据丢失后批次号仍大于数据库中记录的批次号
+local function nextGen()
+    local time = redis.call('TIME')
+    local gen = math.max(tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000),
+            tonumber(redis.call('GET', genKey) or '0') + 1)
+    redis.call('SET', genKey, string.format('%.0f', gen))
+end
+
+local seq = tonumber(redis.call('GET', seqKey) or '0')
+if stage == 'begin' then
+    if redis.call('EXISTS', flushingKey) == 0 then
+        if redis.call('EXISTS', deltaKey) == 0 then
+            return 0
+        end
+        redis.replicate_commands()
+        redis.call('RENAME', deltaKey, flushingKey)
+        nextGen()
+    elseif redis.call('EXISTS', genKey) == 0 then
+        redis.replicate_commands()
+        nextGen()
+    end
+    if seq % 2 == 0 then
+        return redis.call('INCR', seqKey)
+    end
+    return redis.call('INCRBY', seqKey, 2)
+end
+-- 本次写回的序号
+if seq ~= tonumber(ARGV[2]) then
+    return 0
+end
+redis.call('DEL', flushingKey)
+redis.call('INCR', seqKey)
+return 1
@@ -0,0 +1,20 @@
+---
+--- 店铺计数器自增：记录待写回数据库的增量，店铺哈希缓存存在时同步自增
+--- 缓存不存在时不创建，下次加载时由数据库中的值加上未写回的增量得到
+---
+-- 店铺哈希缓存key
+local hashKey = KEYS[1]
+-- 待写回数据库的增量
+local deltaKey = KEYS[2]
+-- 计数器字段
+local field = ARGV[1]
+-- 增量
+local delta = ARGV[2]
+-- 增量中的字段：店铺id:计数器字段
+local deltaField = ARGV[3]
+
+redis.call('HINCRBY', deltaKey, deltaField, delta)
+if redis.call('HEXISTS', hashKey, 'id') == 1 then
+    return redis.call('HINCRBY', hashKey, field, delta)
+end
+return nil
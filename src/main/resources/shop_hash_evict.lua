@@ -0,0 +1,16 @@
+---
+--- 删除店铺哈希缓存，只保留更新后的更新时间作为版本号
+--- 更新前从数据库读到旧数据的加载在删除之后才写入缓存时，由加载脚本比较版本号拒绝写入
+--- 只有版本号、没有id字段的哈希视为缓存不存在
+---
+-- 店铺哈希缓存key
+local hashKey = KEYS[1]
+-- 更新后的更新时间，yyyy-MM-dd HH:mm:ss
+local version = ARGV[1]
+-- 过期时间（毫秒）
+local ttl = ARGV[2]
+
+redis.call('DEL', hashKey)
+redis.call('HSET', hashKey, 'updateTime', version)
+redis.call('PEXPIRE', hashKey, ttl)
+return 1
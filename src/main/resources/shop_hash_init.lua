@@ -0,0 +1,43 @@
+---
+--- 写入店铺哈希缓存：数据库中的值加上未写回的增量
+--- 写回序号为奇数表示正在写回，读取数据库前后序号不一致表示期间发生过写回，
+--- 这两种情况下读到的数据库值与增量的关系不确定，放弃写入，避免计数器重复或遗漏
+--- 店铺修改后删除缓存时保留了更新时间，读到的数据更新时间更早时说明读到的是修改前的数据，放弃写入；
+--- 与带版本号的缓存写入一致，已有版本更新时拒绝覆盖，版本相同时允许写入
+---
+-- 店铺哈希缓存key
+local hashKey = KEYS[1]
+-- 待写回数据库的增量
+local deltaKey = KEYS[2]
+-- 写回序号
+local seqKey = KEYS[3]
+-- 读取数据库前的写回序号
+local expectedSeq = ARGV[1]
+-- 过期时间（毫秒）
+local ttl = ARGV[2]
+-- 店铺id
+local shopId = ARGV[3]
+-- 读到的数据的更新时间，yyyy-MM-dd HH:mm:ss，格式固定，按字符串比较先后
+local version = ARGV[4]
+-- ARGV[5]开始为字段、值交替
+
+if redis.call('HEXISTS', hashKey, 'id') == 1 then
+    return 0
+end
+local evictedVersion = redis.call('HGET', hashKey, 'updateTime')
+if evictedVersion and evictedVersion > version then
+    return -2
+end
+local seq = redis.call('GET', seqKey) or '0'
+if seq ~= expectedSeq or tonumber(seq) % 2 == 1 then
+    return -1
+end
+redis.call('HSET', hashKey, unpack(ARGV, 5))
+for _, field in ipairs({'sold', 'comments'}) do
+    local delta = redis.call('HGET', deltaKey, shopId .. ':' .. field)
+    if delta then
+        redis.call('HINCRBY', hashKey, field, delta)
+    end
+end
+redis.call('PEXPIRE', hashKey, ttl)
+return 1
@@ -0,0 +1,65 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.ShopTypeSnapshot;
+import com.hmdp.service.IShopTypeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 店铺类型列表的条件请求：If-None-Match与ETag一致时返回304，不发送响应体
+ */
+class ShopTypeControllerTest {
+    private static final String BODY = "{\"success\":true,\"data\":[]}";
+
+    private static final String ETAG = "\"5d41402abc4b2a76b9719d911017c592\"";
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        IShopTypeService typeService = mock(IShopTypeService.class);
+        when(typeService.getSnapshot()).thenReturn(new ShopTypeSnapshot(1L, Collections.emptyList(),
+                BODY.getBytes(StandardCharsets.UTF_8), ETAG));
+        ShopTypeController controller = new ShopTypeController();
+        ReflectionTestUtils.setField(controller, "typeService", typeService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void returnsBodyWithETag() throws Exception {
+        mockMvc.perform(get("/shop-type/list"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().string(BODY));
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingETag() throws Exception {
+        mockMvc.perform(get("/shop-type/list").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void returnsBodyForStaleETag() throws Exception {
+        mockMvc.perform(get("/shop-type/list").header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(BODY));
+    }
+}
@@ -0,0 +1,115 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.utils.EmbeddedRedisSupport;
+import com.hmdp.utils.constant.RedisConstants;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 计数器增量写回的开始与结束：写回序号作为本次写回的标识，只有持有当前序号的写回才能结束
+ */
+class ShopCounterFlushScriptTest extends EmbeddedRedisSupport {
+    private static final DefaultRedisScript<Long> SCRIPT = script("shop_counter_flush.lua");
+
+    private static final List<String> KEYS = Arrays.asList(RedisConstants.SHOP_COUNTER_DELTA_KEY,
+            RedisConstants.SHOP_COUNTER_FLUSHING_KEY, RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY,
+            RedisConstants.SHOP_COUNTER_FLUSH_GEN_KEY);
+
+    @Test
+    void beginWithoutDeltaDoesNothing() {
+        assertThat(begin()).isEqualTo(0L);
+
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY)).isFalse();
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SHOP_COUNTER_FLUSH_GEN_KEY)).isFalse();
+    }
+
+    @Test
+    void beginMovesDeltaAndEndClearsIt() {
+        addDelta("1:sold", 3);
+
+        Long seq = begin();
+        assertThat(seq).isEqualTo(1L);
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SHOP_COUNTER_DELTA_KEY)).isFalse();
+        assertThat(stringRedisTemplate.opsForHash().get(RedisConstants.SHOP_COUNTER_FLUSHING_KEY, "1:sold"))
+                .isEqualTo("3");
+
+        //写回期间的新增量进入新的待写回增量
+        addDelta("1:sold", 2);
+
+        assertThat(end(seq)).isEqualTo(1L);
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SHOP_COUNTER_FLUSHING_KEY)).isFalse();
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY)).isEqualTo("2");
+        assertThat(stringRedisTemplate.opsForHash().get(RedisConstants.SHOP_COUNTER_DELTA_KEY, "1:sold"))
+                .isEqualTo("2");
+    }
+
+    @Test
+    void unfinishedFlushIsResumedWithNewSeq() {
+        addDelta("1:sold", 3);
+        Long first = begin();
+        String gen = gen();
+
+        //上次写回未结束（如锁过期），新的写回继续处理上次的增量，序号保持为奇数
+        addDelta("2:sold", 1);
+        Long second = begin();
+        assertThat(second).isEqualTo(first + 2);
+        //同一批增量的批次号不变，数据库据此跳过已累加过的店铺
+        assertThat(gen()).isEqualTo(gen);
+        assertThat(stringRedisTemplate.opsForHash().get(RedisConstants.SHOP_COUNTER_FLUSHING_KEY, "1:sold"))
+                .isEqualTo("3");
+        assertThat(stringRedisTemplate.opsForHash().hasKey(RedisConstants.SHOP_COUNTER_FLUSHING_KEY, "2:sold"))
+                .isFalse();
+
+        //旧的写回不能结束新的写回
+        assertThat(end(first)).isEqualTo(0L);
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SHOP_COUNTER_FLUSHING_KEY)).isTrue();
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY))
+                .isEqualTo(String.valueOf(second));
+
+        assertThat(end(second)).isEqualTo(1L);
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SHOP_COUNTER_FLUSHING_KEY)).isFalse();
+    }
+
+    @Test
+    void endIsNotRepeatable() {
+        addDelta("1:sold", 3);
+        Long seq = begin();
+
+        assertThat(end(seq)).isEqualTo(1L);
+        assertThat(end(seq)).isEqualTo(0L);
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY)).isEqualTo("2");
+    }
+
+    @Test
+    void eachNewBatchGetsLargerGen() {
+        addDelta("1:sold", 3);
+        end(begin());
+        long first = Long.parseLong(gen());
+        assertThat(first).isGreaterThan(System.currentTimeMillis() - 60_000L);
+
+        addDelta("1:sold", 1);
+        begin();
+        assertThat(Long.parseLong(gen())).isGreaterThan(first);
+    }
+
+    private String gen() {
+        return stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_COUNTER_FLUSH_GEN_KEY);
+    }
+
+    private Long begin() {
+        return stringRedisTemplate.execute(SCRIPT, KEYS, "begin");
+    }
+
+    private Long end(Long seq) {
+        return stringRedisTemplate.execute(SCRIPT, KEYS, "end", seq.toString());
+    }
+
+    private void addDelta(String field, long delta) {
+        stringRedisTemplate.opsForHash().increment(RedisConstants.SHOP_COUNTER_DELTA_KEY, field, delta);
+    }
+}
@@ -0,0 +1,72 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.utils.EmbeddedRedisSupport;
+import com.hmdp.utils.constant.RedisConstants;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 店铺哈希缓存的加载与删除：删除时保留的更新时间晚于加载读到的数据时拒绝写入
+ */
+class ShopHashInitScriptTest extends EmbeddedRedisSupport {
+    private static final DefaultRedisScript<Long> INIT = script("shop_hash_init.lua");
+
+    private static final DefaultRedisScript<Long> EVICT = script("shop_hash_evict.lua");
+
+    private static final String KEY = RedisConstants.CACHE_SHOP_HASH_KEY + 1;
+
+    private static final List<String> KEYS = Arrays.asList(KEY,
+            RedisConstants.SHOP_COUNTER_DELTA_KEY, RedisConstants.SHOP_COUNTER_FLUSH_SEQ_KEY);
+
+    @Test
+    void loadsShopWithPendingDelta() {
+        stringRedisTemplate.opsForHash().put(RedisConstants.SHOP_COUNTER_DELTA_KEY, "1:sold", "2");
+
+        assertThat(init("2026-10-18 10:00:00", "旧店名")).isEqualTo(1L);
+
+        assertThat(stringRedisTemplate.opsForHash().get(KEY, "name")).isEqualTo("旧店名");
+        assertThat(stringRedisTemplate.opsForHash().get(KEY, "sold")).isEqualTo("7");
+    }
+
+    @Test
+    void evictedShopIsNotOverwrittenByOlderRead() {
+        init("2026-10-18 10:00:00", "旧店名");
+
+        //修改提交后删除缓存，修改前开始的加载随后才写入
+        evict("2026-10-18 10:00:05");
+        assertThat(stringRedisTemplate.opsForHash().hasKey(KEY, "id")).isFalse();
+        assertThat(init("2026-10-18 10:00:00", "旧店名")).isEqualTo(-2L);
+        assertThat(stringRedisTemplate.opsForHash().hasKey(KEY, "id")).isFalse();
+
+        //读到修改后的数据时正常写入
+        assertThat(init("2026-10-18 10:00:05", "新店名")).isEqualTo(1L);
+        assertThat(stringRedisTemplate.opsForHash().get(KEY, "name")).isEqualTo("新店名");
+    }
+
+    @Test
+    void counterIsNotIncrementedIntoEvictedShop() {
+        DefaultRedisScript<Long> incr = script("shop_counter_incr.lua");
+        evict("2026-10-18 10:00:05");
+
+        Long value = stringRedisTemplate.execute(incr, Arrays.asList(KEY, RedisConstants.SHOP_COUNTER_DELTA_KEY),
+                "sold", "1", "1:sold");
+
+        assertThat(value).isNull();
+        assertThat(stringRedisTemplate.opsForHash().hasKey(KEY, "sold")).isFalse();
+    }
+
+    private Long init(String updateTime, String name) {
+        return stringRedisTemplate.execute(INIT, KEYS, "0", "60000", "1", updateTime,
+                "id", "1", "name", name, "sold", "5", "updateTime", updateTime);
+    }
+
+    private void evict(String updateTime) {
+        stringRedisTemplate.execute(EVICT, Collections.singletonList(KEY), updateTime, "60000");
+    }
+}
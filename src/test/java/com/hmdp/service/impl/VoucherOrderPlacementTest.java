@@ -0,0 +1,124 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.utils.EmbeddedRedisSupport;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.constant.RedisConstants;
+import com.hmdp.utils.seckill.SeckillStockManager;
+import com.hmdp.utils.seckill.SoldOutRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分片库存下单：从用户所在分片开始，售罄时由调用方依次尝试后面的分片
+ */
+class VoucherOrderPlacementTest extends EmbeddedRedisSupport {
+    private static final Long VOUCHER_ID = 10L;
+
+    private static final int SHARDS = 2;
+
+    private final SoldOutRegistry soldOutRegistry = mock(SoldOutRegistry.class);
+
+    private SeckillStockManager seckillStockManager;
+
+    private VoucherOrderServiceImpl voucherOrderService;
+
+    @BeforeEach
+    void setUp() {
+        SeckillProperties properties = new SeckillProperties();
+        properties.setStockShards(SHARDS);
+        seckillStockManager = new SeckillStockManager(stringRedisTemplate, properties);
+        RedisIdWorker redisIdWorker = mock(RedisIdWorker.class);
+        AtomicLong ids = new AtomicLong();
+        when(redisIdWorker.nextId(anyString())).thenAnswer(invocation -> ids.incrementAndGet());
+
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(voucherOrderService, "redisIdWorker", redisIdWorker);
+        ReflectionTestUtils.setField(voucherOrderService, "soldOutRegistry", soldOutRegistry);
+        ReflectionTestUtils.setField(voucherOrderService, "seckillStockManager", seckillStockManager);
+
+        //每个分片1件库存
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(VOUCHER_ID);
+        voucher.setStock(SHARDS);
+        voucher.setBeginTime(LocalDateTime.now().minusHours(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        seckillStockManager.initStock(voucher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    @Test
+    void fallsBackToNextShardWhenHomeShardIsEmpty() {
+        long[] users = usersOfShard(0, 3);
+
+        assertThat(place(users[0]).getSuccess()).isTrue();
+        //所在分片已售罄，从下一个分片扣减库存
+        assertThat(place(users[1]).getSuccess()).isTrue();
+        assertThat(stock(0)).isEqualTo("0");
+        assertThat(stock(1)).isEqualTo("0");
+        assertThat(stringRedisTemplate.opsForSet().isMember(
+                SeckillStockManager.orderKey(VOUCHER_ID, 1, SHARDS), String.valueOf(users[1]))).isTrue();
+        assertThat(stringRedisTemplate.opsForStream().size(RedisConstants.SECKILL_ORDER_STREAM_KEY)).isEqualTo(2L);
+        verify(soldOutRegistry, never()).markSoldOut(VOUCHER_ID);
+
+        //所有分片都已售罄
+        Result result = place(users[2]);
+        assertThat(result.getSuccess()).isFalse();
+        assertThat(result.getErrorMsg()).isEqualTo("当前已售罄！");
+        verify(soldOutRegistry).markSoldOut(VOUCHER_ID);
+    }
+
+    @Test
+    void buyerFromNeighbourShardCannotBuyAgainAfterHomeShardIsReplenished() {
+        long[] users = usersOfShard(0, 2);
+        place(users[0]);
+        assertThat(place(users[1]).getSuccess()).isTrue();
+
+        seckillStockManager.addStock(VOUCHER_ID, 2);
+
+        Result again = place(users[1]);
+        assertThat(again.getSuccess()).isFalse();
+        assertThat(again.getErrorMsg()).isEqualTo("不允许重复下单！");
+        assertThat(stock(0)).isEqualTo("1");
+    }
+
+    private Result place(long userId) {
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        UserHolder.saveUser(user);
+        return voucherOrderService.placeVoucherOrder(VOUCHER_ID);
+    }
+
+    private String stock(int shard) {
+        return stringRedisTemplate.opsForValue().get(SeckillStockManager.stockKey(VOUCHER_ID, shard, SHARDS));
+    }
+
+    private static long[] usersOfShard(int shard, int count) {
+        return LongStream.iterate(1, id -> id + 1)
+                .filter(id -> SeckillStockManager.homeShard(id, SHARDS) == shard)
+                .limit(count)
+                .toArray();
+    }
+}
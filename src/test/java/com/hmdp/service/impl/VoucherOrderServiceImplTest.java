@@ -0,0 +1,117 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.conditions.update.UpdateChainWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillVoucherService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量保存秒杀订单：库存只按实际插入的订单数扣减，重复投递的订单被忽略
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class VoucherOrderServiceImplTest {
+    @Mock
+    private VoucherOrderMapper baseMapper;
+
+    @Mock
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Mock
+    private UpdateChainWrapper<SeckillVoucher> stockUpdate;
+
+    @InjectMocks
+    private VoucherOrderServiceImpl voucherOrderService;
+
+    @BeforeEach
+    void setUp() {
+        when(seckillVoucherService.update()).thenReturn(stockUpdate);
+        when(stockUpdate.setSql(anyString())).thenReturn(stockUpdate);
+        when(stockUpdate.eq(anyString(), any())).thenReturn(stockUpdate);
+        when(stockUpdate.update()).thenReturn(true);
+    }
+
+    @Test
+    void decrementsStockByInsertedOrders() {
+        List<VoucherOrder> orders = Arrays.asList(order(1L, 1L, 10L), order(2L, 2L, 10L), order(3L, 3L, 10L));
+        when(baseMapper.insertBatchSkipDuplicates(anyList())).thenReturn(3);
+
+        voucherOrderService.createVoucherOrders(orders);
+
+        verify(baseMapper).insertBatchSkipDuplicates(orders);
+        verify(stockUpdate).setSql("stock = stock - 3");
+        verify(stockUpdate).eq("voucher_id", 10L);
+    }
+
+    @Test
+    void ignoresDuplicateOrders() {
+        List<VoucherOrder> orders = Arrays.asList(order(1L, 1L, 10L), order(2L, 2L, 10L), order(3L, 3L, 10L));
+        //重复投递的订单已保存过，本次只插入1条
+        when(baseMapper.insertBatchSkipDuplicates(anyList())).thenReturn(1);
+
+        voucherOrderService.createVoucherOrders(orders);
+
+        verify(stockUpdate).setSql("stock = stock - 1");
+    }
+
+    @Test
+    void doesNotTouchStockWhenAllOrdersAreDuplicates() {
+        when(baseMapper.insertBatchSkipDuplicates(anyList())).thenReturn(0);
+
+        voucherOrderService.createVoucherOrders(Collections.singletonList(order(1L, 1L, 10L)));
+
+        verify(seckillVoucherService, never()).update();
+    }
+
+    @Test
+    void updatesStockOfEachVoucher() {
+        VoucherOrder first = order(1L, 1L, 20L);
+        VoucherOrder second = order(2L, 1L, 10L);
+        VoucherOrder third = order(3L, 2L, 20L);
+        when(baseMapper.insertBatchSkipDuplicates(anyList())).thenAnswer(invocation -> {
+            List<VoucherOrder> batch = invocation.getArgument(0);
+            return batch.size();
+        });
+
+        voucherOrderService.createVoucherOrders(Arrays.asList(first, second, third));
+
+        verify(baseMapper).insertBatchSkipDuplicates(Collections.singletonList(second));
+        verify(baseMapper).insertBatchSkipDuplicates(Arrays.asList(first, third));
+        verify(stockUpdate).eq("voucher_id", 10L);
+        verify(stockUpdate).setSql("stock = stock - 1");
+        verify(stockUpdate).eq("voucher_id", 20L);
+        verify(stockUpdate).setSql("stock = stock - 2");
+    }
+
+    @Test
+    void ignoresEmptyBatch() {
+        voucherOrderService.createVoucherOrders(Collections.emptyList());
+
+        verify(baseMapper, never()).insertBatchSkipDuplicates(anyList());
+        verify(seckillVoucherService, never()).update();
+    }
+
+    private static VoucherOrder order(Long id, Long userId, Long voucherId) {
+        return new VoucherOrder().setId(id).setUserId(userId).setVoucherId(voucherId);
+    }
+}
@@ -0,0 +1,116 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.conditions.update.UpdateChainWrapper;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.constant.RedisConstants;
+import com.hmdp.utils.seckill.SeckillStockManager;
+import com.hmdp.utils.seckill.SoldOutRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 秒杀券的Redis库存在事务提交后才写入：新建时初始化库存，补充库存后再清除售罄标记
+ */
+class VoucherServiceImplTest {
+    private static final Long VOUCHER_ID = 10L;
+
+    private final ISeckillVoucherService seckillVoucherService = mock(ISeckillVoucherService.class);
+
+    private final SeckillStockManager seckillStockManager = mock(SeckillStockManager.class);
+
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+
+    private SoldOutRegistry soldOutRegistry;
+
+    private VoucherServiceImpl voucherService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        soldOutRegistry = new SoldOutRegistry(stringRedisTemplate, new SeckillProperties(),
+                mock(RedisMessageListenerContainer.class));
+        voucherService = new VoucherServiceImpl();
+        ReflectionTestUtils.setField(voucherService, "baseMapper", mock(VoucherMapper.class));
+        ReflectionTestUtils.setField(voucherService, "seckillVoucherService", seckillVoucherService);
+        ReflectionTestUtils.setField(voucherService, "seckillStockManager", seckillStockManager);
+        ReflectionTestUtils.setField(voucherService, "soldOutRegistry", soldOutRegistry);
+
+        UpdateChainWrapper<SeckillVoucher> stockUpdate = mock(UpdateChainWrapper.class);
+        when(seckillVoucherService.update()).thenReturn(stockUpdate);
+        when(stockUpdate.setSql(anyString())).thenReturn(stockUpdate);
+        when(stockUpdate.eq(anyString(), any())).thenReturn(stockUpdate);
+        when(stockUpdate.update()).thenReturn(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void initializesRedisStockAfterCommit() {
+        Voucher voucher = new Voucher();
+        voucher.setId(VOUCHER_ID);
+        voucher.setStock(100);
+        voucher.setBeginTime(LocalDateTime.now());
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+
+        voucherService.addSeckillVoucher(voucher);
+        verify(seckillStockManager, never()).initStock(any());
+
+        commit();
+        ArgumentCaptor<SeckillVoucher> captor = ArgumentCaptor.forClass(SeckillVoucher.class);
+        verify(seckillStockManager).initStock(captor.capture());
+        assertThat(captor.getValue().getVoucherId()).isEqualTo(VOUCHER_ID);
+        assertThat(captor.getValue().getStock()).isEqualTo(100);
+    }
+
+    @Test
+    void clearsSoldOutMarkAfterStockIsReplenished() {
+        soldOutRegistry.markSoldOut(VOUCHER_ID);
+
+        assertThat(voucherService.replenishSeckillStock(VOUCHER_ID, 5).getSuccess()).isTrue();
+        //提交前Redis库存和售罄标记都不变
+        verify(seckillStockManager, never()).addStock(anyLong(), anyInt());
+        assertThat(soldOutRegistry.isSoldOut(VOUCHER_ID)).isTrue();
+
+        commit();
+        assertThat(soldOutRegistry.isSoldOut(VOUCHER_ID)).isFalse();
+        InOrder inOrder = inOrder(seckillStockManager, stringRedisTemplate);
+        inOrder.verify(seckillStockManager).addStock(VOUCHER_ID, 5);
+        inOrder.verify(stringRedisTemplate).convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, "-" + VOUCHER_ID);
+    }
+
+    private static void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.hmdp.utils;
+
+import com.hmdp.utils.cache.CacheEnvelope;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 带版本号的缓存写入：版本号 = 数据版本号*2，写穿的数据再加1
+ */
+class CacheCasSetScriptTest extends EmbeddedRedisSupport {
+    private static final DefaultRedisScript<Long> SCRIPT = script("cache_cas_set.lua");
+
+    private static final String KEY = "cache:shop:1";
+
+    //秒级更新时间换算的数据版本号
+    private static final long DATA_VERSION = 1700000000000L;
+
+    private static final long REBUILD = DATA_VERSION * 2;
+
+    private static final long WRITE_THROUGH = DATA_VERSION * 2 + 1;
+
+    @Test
+    void writesWhenKeyIsMissing() {
+        long now = System.currentTimeMillis();
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(1L);
+
+        assertThat(versionInRedis()).isEqualTo(REBUILD);
+    }
+
+    @Test
+    void rejectsOlderVersion() {
+        long now = System.currentTimeMillis();
+        long newer = (DATA_VERSION + 1000) * 2;
+        casSet(envelope(now + 60000, newer), newer, false, now);
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(0L);
+        assertThat(casSet(envelope(now + 60000, WRITE_THROUGH), WRITE_THROUGH, true, now)).isEqualTo(0L);
+
+        assertThat(versionInRedis()).isEqualTo(newer);
+    }
+
+    @Test
+    void rebuildRenewsSameVersion() {
+        long now = System.currentTimeMillis();
+        casSet(envelope(now - 1000, REBUILD), REBUILD, false, now);
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(1L);
+
+        assertThat(CacheEnvelope.readExpireAt(valueInRedis())).isEqualTo(now + 60000);
+    }
+
+    @Test
+    void writeThroughOverwritesRebuildOfSameVersion() {
+        long now = System.currentTimeMillis();
+        casSet(envelope(now + 60000, REBUILD), REBUILD, false, now);
+
+        assertThat(casSet(envelope(now + 60000, WRITE_THROUGH), WRITE_THROUGH, true, now)).isEqualTo(1L);
+
+        assertThat(versionInRedis()).isEqualTo(WRITE_THROUGH);
+    }
+
+    @Test
+    void rebuildDoesNotOverwriteFreshWriteThroughOfSameVersion() {
+        long now = System.currentTimeMillis();
+        casSet(envelope(now + 60000, WRITE_THROUGH), WRITE_THROUGH, true, now);
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(0L);
+
+        assertThat(versionInRedis()).isEqualTo(WRITE_THROUGH);
+    }
+
+    @Test
+    void rebuildRenewsExpiredWriteThroughOfSameVersion() {
+        long now = System.currentTimeMillis();
+        casSet(envelope(now - 1000, WRITE_THROUGH), WRITE_THROUGH, true, now);
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(1L);
+
+        assertThat(versionInRedis()).isEqualTo(REBUILD);
+    }
+
+    @Test
+    void readsVersionAndExpireTimeOfJsonFormat() {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForValue().set(KEY,
+                "{\"delta\":0,\"version\":" + WRITE_THROUGH + ",\"expireTime\":" + (now + 60000) + "}");
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(0L);
+
+        stringRedisTemplate.opsForValue().set(KEY,
+                "{\"delta\":0,\"version\":" + WRITE_THROUGH + ",\"expireTime\":" + (now - 1000) + "}");
+
+        assertThat(casSet(envelope(now + 60000, REBUILD), REBUILD, false, now)).isEqualTo(1L);
+    }
+
+    @Test
+    void setsPhysicalTtl() {
+        long now = System.currentTimeMillis();
+
+        byte[] value = envelope(-1L, REBUILD);
+        assertThat(stringRedisTemplate.execute(SCRIPT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class), Collections.singletonList(KEY),
+                value, raw(String.valueOf(REBUILD)), raw("60000"), raw("0"), raw(String.valueOf(now))))
+                .isEqualTo(1L);
+
+        assertThat(stringRedisTemplate.getExpire(KEY)).isBetween(1L, 60L);
+    }
+
+    private Long casSet(byte[] value, long version, boolean writeThrough, long now) {
+        return stringRedisTemplate.execute(SCRIPT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class), Collections.singletonList(KEY),
+                value, raw(String.valueOf(version)), raw("-1"), raw(writeThrough ? "1" : "0"),
+                raw(String.valueOf(now)));
+    }
+
+    private static byte[] envelope(long expireAt, long version) {
+        return CacheEnvelope.write((byte) 1, (byte) 0, expireAt, 0, version, "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long versionInRedis() {
+        return CacheEnvelope.readVersion(valueInRedis());
+    }
+
+    private byte[] valueInRedis() {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(raw(KEY)));
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
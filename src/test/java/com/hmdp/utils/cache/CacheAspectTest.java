@@ -0,0 +1,184 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CacheAspectTest {
+    private static final String PREFIX = "cache:shop:";
+
+    private AnnotationConfigApplicationContext context;
+
+    private CacheClient cacheClient;
+
+    private ShopRepository repository;
+
+    private ShopRepository proxy;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        context = new AnnotationConfigApplicationContext(AspectConfig.class);
+        cacheClient = context.getBean(CacheClient.class);
+        proxy = context.getBean(ShopRepository.class);
+        repository = context.getBean(AspectConfig.class).repository;
+        //未命中：执行原方法
+        when(cacheClient.queryWithPassThrough(any(), any(), any(), any(), anyLong(), any()))
+                .thenAnswer(invocation -> ((Function<Object, Object>) invocation.getArgument(3))
+                        .apply(invocation.getArgument(1)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void cachedResolvesKeyFromParameterName() {
+        Shop shop = proxy.queryById(7L);
+
+        assertThat(shop.getId()).isEqualTo(7L);
+        assertThat(repository.loads.get()).isEqualTo(1);
+        verify(cacheClient).queryWithPassThrough(eq(PREFIX), eq(7L), eq(Shop.class), any(), eq(30L),
+                eq(TimeUnit.MINUTES));
+    }
+
+    @Test
+    void cachedPassesStrategyAndNestedKey() {
+        Shop query = new Shop();
+        query.setId(8L);
+
+        proxy.queryLike(query);
+
+        verify(cacheClient).queryWithStaleWhileRevalidate(eq(PREFIX), eq(8L), eq(Shop.class), any(), eq(1L),
+                eq(10L), eq(TimeUnit.SECONDS));
+        assertThat(repository.loads.get()).isZero();
+    }
+
+    @Test
+    void nullKeyBypassesCache() {
+        Shop shop = proxy.queryById(null);
+
+        assertThat(shop.getId()).isNull();
+        assertThat(repository.loads.get()).isEqualTo(1);
+        verifyNoInteractions(cacheClient);
+    }
+
+    @Test
+    void evictDeletesAfterTransactionCommits() {
+        Shop shop = new Shop();
+        shop.setId(9L);
+
+        proxy.update(shop);
+
+        assertThat(repository.updates.get()).isEqualTo(1);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        InOrder inOrder = inOrder(transactionManager, cacheClient);
+        inOrder.verify(transactionManager).commit(any());
+        inOrder.verify(cacheClient).delete(PREFIX + 9L);
+        inOrder.verify(cacheClient).clearNegative(PREFIX, 9L);
+    }
+
+    @Test
+    void evictIsSkippedWhenMethodFails() {
+        Shop shop = new Shop();
+        shop.setId(9L);
+        repository.failUpdate = true;
+
+        try {
+            proxy.update(shop);
+        } catch (IllegalStateException ignored) {
+            //原方法抛出的异常原样抛出
+        }
+
+        verify(cacheClient, never()).delete(any());
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy(proxyTargetClass = true)
+    @EnableTransactionManagement(proxyTargetClass = true)
+    static class AspectConfig {
+        //代理的目标对象，用于检查原方法的执行次数
+        final ShopRepository repository = new ShopRepository();
+
+        @Bean
+        CacheClient cacheClient() {
+            return mock(CacheClient.class);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+            when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+            return transactionManager;
+        }
+
+        @Bean
+        CacheAspect cacheAspect(CacheClient cacheClient) {
+            return new CacheAspect(cacheClient);
+        }
+
+        @Bean
+        ShopRepository shopRepository() {
+            return repository;
+        }
+    }
+
+    public static class ShopRepository {
+        final AtomicInteger loads = new AtomicInteger();
+
+        final AtomicInteger updates = new AtomicInteger();
+
+        boolean failUpdate;
+
+        @Cached(prefix = PREFIX, key = "#shopId", ttl = 30)
+        public Shop queryById(Long shopId) {
+            loads.incrementAndGet();
+            Shop shop = new Shop();
+            shop.setId(shopId);
+            return shop;
+        }
+
+        @Cached(prefix = PREFIX, key = "#query.id", strategy = CacheStrategy.STALE_WHILE_REVALIDATE,
+                ttl = 1, hardTtl = 10, timeUnit = TimeUnit.SECONDS)
+        public Shop queryLike(Shop query) {
+            loads.incrementAndGet();
+            return query;
+        }
+
+        @Transactional
+        @CacheEvict(prefix = PREFIX, key = "#shop.id")
+        public void update(Shop shop) {
+            if (failUpdate) {
+                throw new IllegalStateException("更新失败");
+            }
+            updates.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheCompressorTest {
+    private static final String PREFIX = "cache:shop:";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void roundTripsCompressiblePayload() {
+        CacheCompressor compressor = compressor(64);
+        byte[] payload = repeat("{\"name\":\"103茶餐厅\",\"area\":\"大关\"}", 50);
+
+        byte[] compressed = compressor.compress(PREFIX, payload);
+
+        assertThat(compressed).isNotNull();
+        assertThat(compressed.length).isLessThan(payload.length);
+        //压缩结果放在更大的数组中间，按偏移量解压
+        byte[] stored = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, stored, 7, compressed.length);
+        assertThat(compressor.decompress(PREFIX, stored, 7, compressed.length)).isEqualTo(payload);
+        assertThat(bytes("raw")).isEqualTo(payload.length);
+        assertThat(bytes("stored")).isEqualTo(compressed.length);
+    }
+
+    @Test
+    void payloadBelowThresholdIsNotCompressed() {
+        CacheCompressor compressor = compressor(1024);
+        byte[] payload = repeat("a", 1023);
+
+        assertThat(compressor.compress(PREFIX, payload)).isNull();
+        assertThat(compressor.compress(PREFIX, repeat("a", 1024))).isNotNull();
+    }
+
+    @Test
+    void zeroThresholdDisablesCompression() {
+        assertThat(compressor(0).compress(PREFIX, repeat("a", 4096))).isNull();
+    }
+
+    @Test
+    void incompressiblePayloadIsStoredAsIs() {
+        CacheCompressor compressor = compressor(64);
+        byte[] payload = new byte[4096];
+        new Random(1).nextBytes(payload);
+
+        assertThat(compressor.compress(PREFIX, payload)).isNull();
+        assertThat(bytes("stored")).isEqualTo(payload.length);
+    }
+
+    @Test
+    void rejectsDeclaredLengthBeyondLimit() {
+        CacheCompressor compressor = compressor(64);
+        byte[] compressed = compressor.compress(PREFIX, repeat("a", 4096));
+
+        //头部长度改为远超压缩比上限的值，不分配数组
+        writeLength(compressed, Integer.MAX_VALUE);
+        assertThatThrownBy(() -> compressor.decompress(PREFIX, compressed, 0, compressed.length))
+                .isInstanceOf(IllegalStateException.class);
+        writeLength(compressed, -1);
+        assertThatThrownBy(() -> compressor.decompress(PREFIX, compressed, 0, compressed.length))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsLengthMismatch() {
+        CacheCompressor compressor = compressor(64);
+        byte[] payload = repeat("{\"name\":\"103茶餐厅\"}", 50);
+        byte[] compressed = compressor.compress(PREFIX, payload);
+
+        //头部长度大于实际长度
+        writeLength(compressed, payload.length + 1);
+        assertThatThrownBy(() -> compressor.decompress(PREFIX, compressed, 0, compressed.length))
+                .isInstanceOf(IllegalStateException.class);
+        //头部长度小于实际长度
+        writeLength(compressed, payload.length - 1);
+        assertThatThrownBy(() -> compressor.decompress(PREFIX, compressed, 0, compressed.length))
+                .isInstanceOf(IllegalStateException.class);
+        //Deflate数据被截断
+        writeLength(compressed, payload.length);
+        assertThatThrownBy(() -> compressor.decompress(PREFIX, compressed, 0, compressed.length - 2))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(compressor.decompress(PREFIX, compressed, 0, compressed.length)).isEqualTo(payload);
+    }
+
+    private static void writeLength(byte[] compressed, int length) {
+        for (int i = 3; i >= 0; i--) {
+            compressed[i] = (byte) length;
+            length >>>= 8;
+        }
+    }
+
+    private CacheCompressor compressor(int threshold) {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.getCodec().setCompressThreshold(threshold);
+        return new CacheCompressor(new CacheMetrics(meterRegistry), cacheProperties);
+    }
+
+    private double bytes(String stage) {
+        return meterRegistry.get("cache.compression.bytes").tag("prefix", PREFIX).tag("stage", stage)
+                .counter().count();
+    }
+
+    private static byte[] repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
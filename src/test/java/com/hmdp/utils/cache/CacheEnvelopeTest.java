@@ -0,0 +1,75 @@
+package com.hmdp.utils.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheEnvelopeTest {
+
+    @Test
+    void readsWhatWasWritten() {
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+        byte[] raw = CacheEnvelope.write((byte) 2, CacheEnvelope.FLAG_COMPRESSED, 1700000000123L, 45,
+                3400000000001L, payload);
+
+        assertThat(CacheEnvelope.isEnvelope(raw)).isTrue();
+        CacheEnvelope envelope = CacheEnvelope.read(raw);
+        assertThat(envelope.getCodecId()).isEqualTo((byte) 2);
+        assertThat(envelope.isCompressed()).isTrue();
+        assertThat(envelope.getExpireAt()).isEqualTo(1700000000123L);
+        assertThat(envelope.getDelta()).isEqualTo(45);
+        assertThat(envelope.getVersion()).isEqualTo(3400000000001L);
+        assertThat(Arrays.copyOfRange(raw, envelope.getPayloadOffset(),
+                envelope.getPayloadOffset() + envelope.getPayloadLength())).isEqualTo(payload);
+        assertThat(CacheEnvelope.readExpireAt(raw)).isEqualTo(1700000000123L);
+        assertThat(CacheEnvelope.readDelta(raw)).isEqualTo(45);
+        assertThat(CacheEnvelope.readVersion(raw)).isEqualTo(3400000000001L);
+    }
+
+    @Test
+    void keepsNoLogicalExpire() {
+        byte[] raw = CacheEnvelope.write((byte) 1, (byte) 0, -1L, 0, 0L, new byte[0]);
+
+        CacheEnvelope envelope = CacheEnvelope.read(raw);
+        assertThat(envelope.getExpireAt()).isEqualTo(-1L);
+        assertThat(envelope.isCompressed()).isFalse();
+        assertThat(envelope.isExpired(System.currentTimeMillis())).isFalse();
+        assertThat(envelope.getPayloadLength()).isZero();
+    }
+
+    @Test
+    void isExpiredComparesLogicalExpireTime() {
+        CacheEnvelope envelope = CacheEnvelope.read(CacheEnvelope.write((byte) 1, (byte) 0, 1000L, 0, 0L, new byte[0]));
+
+        assertThat(envelope.isExpired(999L)).isFalse();
+        assertThat(envelope.isExpired(1000L)).isTrue();
+    }
+
+    @Test
+    void readsShortHeaderOfOldVersion() {
+        //头部长度为12的旧数据：没有重建耗时和版本号
+        byte[] raw = CacheEnvelope.write((byte) 1, (byte) 0, 5000L, 45, 7L, "x".getBytes(StandardCharsets.UTF_8));
+        byte[] old = new byte[13];
+        System.arraycopy(raw, 0, old, 0, 12);
+        old[1] = 12;
+        old[12] = 'x';
+
+        CacheEnvelope envelope = CacheEnvelope.read(old);
+        assertThat(envelope.getExpireAt()).isEqualTo(5000L);
+        assertThat(envelope.getDelta()).isZero();
+        assertThat(envelope.getVersion()).isZero();
+        assertThat(envelope.getPayloadOffset()).isEqualTo(12);
+        assertThat(envelope.getPayloadLength()).isEqualTo(1);
+    }
+
+    @Test
+    void jsonIsNotEnvelope() {
+        assertThat(CacheEnvelope.isEnvelope("{\"data\":{},\"expireTime\":1}".getBytes(StandardCharsets.UTF_8)))
+                .isFalse();
+        assertThat(CacheEnvelope.isEnvelope(new byte[]{CacheEnvelope.MAGIC})).isFalse();
+        assertThat(CacheEnvelope.isEnvelope(null)).isFalse();
+    }
+}
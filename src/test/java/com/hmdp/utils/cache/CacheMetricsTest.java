@@ -0,0 +1,47 @@
+package com.hmdp.utils.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheMetricsTest {
+    private static final String PREFIX = "cache:shop:";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final CacheMetrics metrics = new CacheMetrics(registry);
+
+    @Test
+    void recordsGetsByPrefixAndResult() {
+        metrics.recordGet(PREFIX, CacheMetrics.HIT);
+        metrics.recordGets(PREFIX, CacheMetrics.HIT, 2);
+        metrics.recordGet(PREFIX, CacheMetrics.MISS);
+        metrics.recordGets(PREFIX, CacheMetrics.MISS, 0);
+
+        assertThat(registry.get("cache.gets").tag("prefix", PREFIX).tag("result", CacheMetrics.HIT)
+                .counter().count()).isEqualTo(3.0);
+        assertThat(registry.get("cache.gets").tag("prefix", PREFIX).tag("result", CacheMetrics.MISS)
+                .counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void sameTagValueUnderDifferentTagKeysIsNotShared() {
+        Counter byResult = ReflectionTestUtils.invokeMethod(metrics, "counter", "cache.test", PREFIX, "result", "x");
+        Counter byStage = ReflectionTestUtils.invokeMethod(metrics, "counter", "cache.test", PREFIX, "stage", "x");
+        Counter untagged = ReflectionTestUtils.invokeMethod(metrics, "counter", "cache.test", PREFIX, null, null);
+
+        assertThat(byStage).isNotSameAs(byResult);
+        assertThat(byStage.getId().getTag("stage")).isEqualTo("x");
+        assertThat(byStage.getId().getTag("result")).isNull();
+        assertThat(untagged).isNotSameAs(byResult).isNotSameAs(byStage);
+    }
+
+    @Test
+    void extractsPrefixFromKey() {
+        assertThat(CacheMetrics.prefixOf("cache:shop:1")).isEqualTo(PREFIX);
+        assertThat(CacheMetrics.prefixOf("plain")).isEmpty();
+    }
+}
@@ -0,0 +1,132 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheRebuildSchedulerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CountDownLatch blockerStarted = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private CacheRebuildScheduler scheduler;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        //1个线程、最多排队2个任务，先用一个阻塞的任务占住线程
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.getRebuild().setThreads(1);
+        cacheProperties.getRebuild().setQueueCapacity(2);
+        scheduler = new CacheRebuildScheduler(cacheProperties, meterRegistry);
+        scheduler.submit("cache:shop:0", false, () -> {
+            blockerStarted.countDown();
+            await(release);
+        });
+        assertThat(blockerStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void sameKeyIsCoalescedWhilePending() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        assertThat(scheduler.submit("cache:shop:1", false, done::countDown)).isTrue();
+
+        //排队中和执行中的key都不再提交
+        assertThat(scheduler.submit("cache:shop:1", false, done::countDown)).isFalse();
+        assertThat(scheduler.submit("cache:shop:0", false, done::countDown)).isFalse();
+        assertThat(meterRegistry.counter("cache.rebuild.coalesced").count()).isEqualTo(2.0);
+
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitNoPendingKeys();
+        //执行结束后同一个key可以再次提交
+        assertThat(scheduler.submit("cache:shop:1", false, () -> { })).isTrue();
+    }
+
+    @Test
+    void batchSubmitsOnlyKeysNotPending() throws InterruptedException {
+        assertThat(scheduler.submit("cache:shop:1", false, () -> { })).isTrue();
+        Map<String, Long> items = new LinkedHashMap<>();
+        items.put("cache:shop:1", 1L);
+        items.put("cache:shop:2", 2L);
+        items.put("cache:shop:3", 3L);
+        List<Long> rebuilt = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        assertThat(scheduler.submitBatch(items, false, ids -> {
+            rebuilt.addAll(ids);
+            done.countDown();
+        })).isTrue();
+
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(rebuilt).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void newKeysAreDroppedWhenQueueIsFull() throws InterruptedException {
+        assertThat(scheduler.submit("cache:shop:1", false, () -> { })).isTrue();
+        assertThat(scheduler.submit("cache:shop:2", false, () -> { })).isTrue();
+
+        assertThat(scheduler.submit("cache:shop:3", false, () -> { })).isFalse();
+        assertThat(meterRegistry.counter("cache.rebuild.dropped").count()).isEqualTo(1.0);
+
+        //被丢弃的key没有留在排队中，队列空出后可以重新提交
+        release.countDown();
+        awaitNoPendingKeys();
+        assertThat(scheduler.submit("cache:shop:3", false, () -> { })).isTrue();
+    }
+
+    @Test
+    void hotKeysRunBeforeQueuedNormalKeys() throws InterruptedException {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.submit("cache:shop:1", false, () -> {
+            order.add("cache:shop:1");
+            done.countDown();
+        });
+        scheduler.submit("cache:shop:2", true, () -> {
+            order.add("cache:shop:2");
+            done.countDown();
+        });
+
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).isEqualTo(Arrays.asList("cache:shop:2", "cache:shop:1"));
+    }
+
+    private void awaitNoPendingKeys() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (meterRegistry.get("cache.rebuild.pending.keys").gauge().value() > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.config.CacheProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class HotKeyDetectorTest {
+    private final LocalCache localCache = mock(LocalCache.class);
+
+    @Test
+    void keyBecomesHotAtThreshold() {
+        HotKeyDetector detector = detector(true, 100, 10);
+
+        record(detector, "cache:shop:1", 99);
+        assertThat(detector.isHot("cache:shop:1")).isFalse();
+
+        record(detector, "cache:shop:1", 1);
+        assertThat(detector.isHot("cache:shop:1")).isTrue();
+        assertThat(detector.getHotKeys().get("cache:shop:1")).isGreaterThanOrEqualTo(100L);
+    }
+
+    @Test
+    void coldKeysAreNotReportedAmongManyDistinctKeys() {
+        HotKeyDetector detector = detector(true, 50, 10);
+
+        for (int i = 0; i < 1000; i++) {
+            record(detector, "cache:shop:" + i, 1);
+        }
+        record(detector, "cache:shop:hot", 50);
+
+        //Count-Min Sketch只会高估：热点一定被发现，只访问一次的key不会累积到阈值
+        assertThat(detector.getHotKeys()).containsOnlyKeys("cache:shop:hot");
+    }
+
+    @Test
+    void hotterKeyReplacesColdestWhenFull() {
+        HotKeyDetector detector = detector(true, 10, 1);
+
+        record(detector, "cache:shop:1", 10);
+        record(detector, "cache:shop:2", 10);
+        assertThat(detector.getHotKeys()).containsOnlyKeys("cache:shop:1");
+
+        record(detector, "cache:shop:2", 1);
+        assertThat(detector.getHotKeys()).containsOnlyKeys("cache:shop:2");
+        verify(localCache).evictHot("cache:shop:1");
+    }
+
+    @Test
+    void disabledDetectorReportsNothing() {
+        HotKeyDetector detector = detector(false, 1, 10);
+
+        record(detector, "cache:shop:1", 10);
+
+        assertThat(detector.isHot("cache:shop:1")).isFalse();
+        assertThat(detector.getHotKeys()).isEmpty();
+    }
+
+    private HotKeyDetector detector(boolean enabled, long threshold, int maxHotKeys) {
+        CacheProperties cacheProperties = new CacheProperties();
+        CacheProperties.HotKey hotKey = cacheProperties.getHotKey();
+        hotKey.setEnabled(enabled);
+        hotKey.setSampleRate(1.0);
+        //窗口足够长，测试期间不会滚动
+        hotKey.setWindowSeconds(3600);
+        hotKey.setThreshold(threshold);
+        hotKey.setMaxHotKeys(maxHotKeys);
+        return new HotKeyDetector(localCache, cacheProperties);
+    }
+
+    private static void record(HotKeyDetector detector, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            detector.record(key);
+        }
+    }
+}
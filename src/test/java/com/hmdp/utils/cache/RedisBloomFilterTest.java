@@ -0,0 +1,45 @@
+package com.hmdp.utils.cache;
+
+import com.hmdp.utils.EmbeddedRedisSupport;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisBloomFilterTest extends EmbeddedRedisSupport {
+
+    @Test
+    void sizesBitmapFromExpectedInsertionsAndFpp() {
+        RedisBloomFilter filter = new RedisBloomFilter(stringRedisTemplate, null, "test", 1000, 0.01, false);
+
+        //m = -n * ln(p) / (ln2)^2 ≈ 9586，k = m / n * ln2 ≈ 7
+        assertThat(filter.getNumBits()).isEqualTo(9586L);
+        assertThat(filter.getNumHashFunctions()).isEqualTo(7);
+        assertThat(filter.getRedisKey()).endsWith("test:9586:7");
+    }
+
+    @Test
+    void mightContainEverythingBeforeReady() {
+        RedisBloomFilter filter = new RedisBloomFilter(stringRedisTemplate, null, "test", 1000, 0.01, false);
+
+        assertThat(filter.mightContain(1L)).isTrue();
+        assertThat(filter.getRejectCount()).isZero();
+    }
+
+    @Test
+    void hasNoFalseNegativesAndBoundedFalsePositives() {
+        RedisBloomFilter filter = new RedisBloomFilter(stringRedisTemplate, null, "test", 1000, 0.01, false);
+        List<Long> ids = LongStream.rangeClosed(1, 1000).boxed().collect(Collectors.toList());
+        filter.putAll(ids);
+        filter.markReady(300);
+
+        assertThat(ids).allMatch(filter::mightContain);
+        long falsePositives = LongStream.rangeClosed(1001, 11000).filter(filter::mightContain).count();
+        //期望误判率1%，10000次查询留出足够余量
+        assertThat(falsePositives).isLessThan(300L);
+        assertThat(filter.getRejectCount()).isEqualTo(10000L - falsePositives);
+    }
+}
@@ -0,0 +1,120 @@
+package com.hmdp.utils.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    //已开始调用的线程数
+    private final AtomicInteger arrived = new AtomicInteger();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Object> results = new ConcurrentLinkedQueue<>();
+
+        List<Thread> callers = startCallers(() -> results.add(singleFlight.execute("cache:shop:1", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "shop";
+        })));
+        //所有调用方都已在等待（加载线程等待放行，其余线程等待加载结果）后再放行
+        awaitAllWaiting(callers);
+        assertThat(singleFlight.inFlight()).isEqualTo(1);
+        release.countDown();
+        join(callers);
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(results).hasSize(CALLERS).containsOnly("shop");
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    void waitingCallersReceiveLoaderException() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+        List<Thread> callers = startCallers(() -> {
+            try {
+                singleFlight.execute("cache:shop:1", () -> {
+                    await(release);
+                    throw new IllegalStateException("数据库不可用");
+                });
+            } catch (IllegalStateException e) {
+                errors.add(e);
+            }
+        });
+        awaitAllWaiting(callers);
+        release.countDown();
+        join(callers);
+
+        assertThat(errors).hasSize(CALLERS).extracting(Throwable::getMessage).containsOnly("数据库不可用");
+        //失败的加载不会留下结果，下次调用重新加载
+        assertThat(singleFlight.<String>execute("cache:shop:1", () -> "shop")).isEqualTo("shop");
+    }
+
+    @Test
+    void differentKeysLoadIndependently() {
+        AtomicInteger loads = new AtomicInteger();
+
+        String result = singleFlight.execute("cache:shop:1",
+                () -> singleFlight.execute("cache:shop:2", () -> "shop" + loads.incrementAndGet()));
+
+        assertThat(result).isEqualTo("shop1");
+        assertThatThrownBy(() -> singleFlight.execute("cache:shop:1", () -> {
+            throw new IllegalArgumentException();
+        })).isInstanceOf(IllegalArgumentException.class);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    private List<Thread> startCallers(Runnable call) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            Thread thread = new Thread(() -> {
+                await(start);
+                arrived.incrementAndGet();
+                call.run();
+            });
+            thread.start();
+            callers.add(thread);
+        }
+        start.countDown();
+        return callers;
+    }
+
+    private void awaitAllWaiting(List<Thread> callers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (arrived.get() < CALLERS || !callers.stream().allMatch(t -> t.getState() == Thread.State.WAITING)) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void join(List<Thread> callers) throws InterruptedException {
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
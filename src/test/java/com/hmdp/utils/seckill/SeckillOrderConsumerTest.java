@@ -0,0 +1,193 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.EmbeddedRedisSupport;
+import com.hmdp.utils.constant.RedisConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class SeckillOrderConsumerTest extends EmbeddedRedisSupport {
+    private static final String GROUP = "g1";
+
+    private static final int MAX_DELIVERIES = 2;
+
+    private final IVoucherOrderService voucherOrderService = mock(IVoucherOrderService.class);
+
+    private SeckillOrderConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        SeckillProperties properties = new SeckillProperties();
+        properties.getConsumer().setGroup(GROUP);
+        properties.getConsumer().setInstanceId("test");
+        properties.getConsumer().setClaimIdleMillis(0);
+        properties.getConsumer().setMaxDeliveries(MAX_DELIVERIES);
+        //不调用init，消费线程和恢复任务都不启动，由测试直接触发恢复
+        consumer = new SeckillOrderConsumer(stringRedisTemplate, voucherOrderService, properties);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        consumer.shutdown();
+    }
+
+    @Test
+    void convertsCompleteMessage() {
+        VoucherOrder order = SeckillOrderConsumer.toVoucherOrder(message("100", "1", "10"));
+
+        assertThat(order).isNotNull();
+        assertThat(order.getId()).isEqualTo(100L);
+        assertThat(order.getUserId()).isEqualTo(1L);
+        assertThat(order.getVoucherId()).isEqualTo(10L);
+    }
+
+    @Test
+    void rejectsMissingOrInvalidIds() {
+        assertThat(SeckillOrderConsumer.toVoucherOrder(message(null, "1", "10"))).isNull();
+        assertThat(SeckillOrderConsumer.toVoucherOrder(message("100", null, "10"))).isNull();
+        assertThat(SeckillOrderConsumer.toVoucherOrder(message("100", "1", null))).isNull();
+        assertThat(SeckillOrderConsumer.toVoucherOrder(message("100", "abc", "10"))).isNull();
+        assertThat(SeckillOrderConsumer.toVoucherOrder(message("100", "1", "0"))).isNull();
+        assertThat(SeckillOrderConsumer.toVoucherOrder(message("-1", "1", "10"))).isNull();
+    }
+
+    @Test
+    void claimsAndProcessesIdlePendingMessages() {
+        publish("100", "1", "10");
+        publish("101", "2", "10");
+        deliverTo("crashed");
+
+        consumer.recoverPendingList();
+
+        verify(voucherOrderService).createVoucherOrders(argThat(orders -> orders.size() == 2
+                && orders.get(0).getId() == 100L && orders.get(1).getId() == 101L));
+        assertThat(pending().isEmpty()).isTrue();
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SECKILL_ORDER_DLQ_KEY)).isFalse();
+    }
+
+    @Test
+    void retriesFailedMessageUntilDeliveriesAreExhausted() {
+        RecordId failing = publish("100", "1", "10");
+        publish("101", "2", "10");
+        deliverTo("crashed");
+        doThrow(new IllegalStateException("db down")).when(voucherOrderService).createVoucherOrders(
+                argThat(orders -> orders.stream().anyMatch(order -> order.getId() == 100L)));
+
+        //批量失败后逐条处理，正常的消息被确认；失败的消息已投递2次，用完重试次数转入死信队列
+        consumer.recoverPendingList();
+
+        verify(voucherOrderService).createVoucherOrders(
+                argThat(orders -> orders.size() == 1 && orders.get(0).getId() == 101L));
+        assertThat(pending().isEmpty()).isTrue();
+        List<MapRecord<String, Object, Object>> dead = stringRedisTemplate.opsForStream()
+                .read(StreamOffset.fromStart(RedisConstants.SECKILL_ORDER_DLQ_KEY));
+        assertThat(dead).hasSize(1);
+        Map<Object, Object> fields = dead.get(0).getValue();
+        assertThat(fields).containsEntry("id", "100")
+                .containsEntry("userId", "1")
+                .containsEntry("voucherId", "10")
+                .containsEntry("sourceId", failing.getValue())
+                .containsEntry("deliveries", String.valueOf(MAX_DELIVERIES));
+        assertThat(fields.get("cause").toString()).contains("db down");
+    }
+
+    @Test
+    void deadLettersMessageDeliveredTooOftenWithoutProcessing() {
+        RecordId id = publish("100", "1", "10");
+        deliverTo("crashed");
+        //再被其他实例认领一次，投递次数达到上限
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(RedisConstants.SECKILL_ORDER_STREAM_KEY);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.streamCommands().xClaim(rawKey, GROUP, "crashed-again", Duration.ZERO, id));
+
+        consumer.recoverPendingList();
+
+        verify(voucherOrderService, never()).createVoucherOrders(anyList());
+        assertThat(pending().isEmpty()).isTrue();
+        List<MapRecord<String, Object, Object>> dead = stringRedisTemplate.opsForStream()
+                .read(StreamOffset.fromStart(RedisConstants.SECKILL_ORDER_DLQ_KEY));
+        assertThat(dead).hasSize(1);
+        assertThat(dead.get(0).getValue()).containsEntry("sourceId", id.getValue())
+                .containsEntry("deliveries", String.valueOf(MAX_DELIVERIES));
+    }
+
+    @Test
+    void keepsFailedMessagePendingWhileRetriesRemain() throws InterruptedException {
+        SeckillProperties properties = new SeckillProperties();
+        properties.getConsumer().setGroup(GROUP);
+        properties.getConsumer().setInstanceId("test");
+        properties.getConsumer().setClaimIdleMillis(0);
+        properties.getConsumer().setMaxDeliveries(3);
+        SeckillOrderConsumer patient = new SeckillOrderConsumer(stringRedisTemplate, voucherOrderService, properties);
+        publish("100", "1", "10");
+        deliverTo("crashed");
+        doThrow(new IllegalStateException("db down")).when(voucherOrderService).createVoucherOrders(anyList());
+
+        patient.recoverPendingList();
+        patient.shutdown();
+
+        PendingMessages pending = pending();
+        assertThat(pending.size()).isEqualTo(1);
+        assertThat(pending.get(0).getConsumerName()).isEqualTo("test-recovery");
+        assertThat(pending.get(0).getTotalDeliveryCount()).isEqualTo(2L);
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SECKILL_ORDER_DLQ_KEY)).isFalse();
+    }
+
+    private static RecordId publish(String id, String userId, String voucherId) {
+        return stringRedisTemplate.opsForStream().add(
+                RedisConstants.SECKILL_ORDER_STREAM_KEY, message(id, userId, voucherId));
+    }
+
+    /**
+     * 消息投递给指定消费者后不确认，模拟处理过程中实例宕机
+     */
+    private static void deliverTo(String consumerName) {
+        stringRedisTemplate.opsForStream().createGroup(RedisConstants.SECKILL_ORDER_STREAM_KEY, ReadOffset.from("0"), GROUP);
+        stringRedisTemplate.opsForStream().read(Consumer.from(GROUP, consumerName), StreamReadOptions.empty(),
+                StreamOffset.create(RedisConstants.SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed()));
+    }
+
+    private static PendingMessages pending() {
+        return stringRedisTemplate.opsForStream().pending(
+                RedisConstants.SECKILL_ORDER_STREAM_KEY, GROUP, Range.unbounded(), 10);
+    }
+
+    private static Map<String, String> message(String id, String userId, String voucherId) {
+        Map<String, String> message = new HashMap<>();
+        if (id != null) {
+            message.put("id", id);
+        }
+        if (userId != null) {
+            message.put("userId", userId);
+        }
+        if (voucherId != null) {
+            message.put("voucherId", voucherId);
+        }
+        return message;
+    }
+}
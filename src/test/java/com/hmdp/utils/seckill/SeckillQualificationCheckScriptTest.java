@@ -0,0 +1,135 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.utils.EmbeddedRedisSupport;
+import com.hmdp.utils.constant.RedisConstants;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 下单资格判断脚本：0 下单成功，1 售罄，2 重复下单，3 未开始，4 已结束，5 库存key不存在
+ */
+class SeckillQualificationCheckScriptTest extends EmbeddedRedisSupport {
+    private static final DefaultRedisScript<Long> SCRIPT = script("seckill_qualification_check.lua");
+
+    private static final long VOUCHER_ID = 10L;
+
+    private static final long HOUR_MILLIS = 3600_000L;
+
+    @Test
+    void admitsOrderAndPublishesMessage() {
+        openWindow();
+        setStock(2);
+
+        assertThat(check(1L, 100L)).isEqualTo(0L);
+
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID)).isEqualTo("1");
+        assertThat(stringRedisTemplate.opsForSet().isMember(RedisConstants.SECKILL_ORDER_KEY + VOUCHER_ID, "1")).isTrue();
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .read(StreamOffset.fromStart(RedisConstants.SECKILL_ORDER_STREAM_KEY));
+        assertThat(records).hasSize(1);
+        Map<Object, Object> expected = new HashMap<>();
+        expected.put("userId", "1");
+        expected.put("voucherId", String.valueOf(VOUCHER_ID));
+        expected.put("id", "100");
+        assertThat(records.get(0).getValue()).isEqualTo(expected);
+    }
+
+    @Test
+    void rejectsWhenSoldOut() {
+        openWindow();
+        setStock(1);
+
+        assertThat(check(1L, 100L)).isEqualTo(0L);
+        assertThat(check(2L, 101L)).isEqualTo(1L);
+
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID)).isEqualTo("0");
+        assertThat(stringRedisTemplate.opsForStream().size(RedisConstants.SECKILL_ORDER_STREAM_KEY)).isEqualTo(1L);
+    }
+
+    @Test
+    void rejectsDuplicateOrderOfSameUser() {
+        openWindow();
+        setStock(5);
+
+        assertThat(check(1L, 100L)).isEqualTo(0L);
+        assertThat(check(1L, 101L)).isEqualTo(2L);
+
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID)).isEqualTo("4");
+    }
+
+    @Test
+    void reportsDuplicateBeforeSoldOut() {
+        openWindow();
+        setStock(1);
+
+        assertThat(check(1L, 100L)).isEqualTo(0L);
+        //已下单的用户在分片售罄后得到重复下单，不会再去尝试其他分片
+        assertThat(check(1L, 101L)).isEqualTo(2L);
+    }
+
+    @Test
+    void rejectsBeforeBegin() {
+        long now = System.currentTimeMillis();
+        setWindow(now + HOUR_MILLIS, now + 2 * HOUR_MILLIS);
+        setStock(5);
+
+        assertThat(check(1L, 100L)).isEqualTo(3L);
+    }
+
+    @Test
+    void rejectsAfterEnd() {
+        long now = System.currentTimeMillis();
+        setWindow(now - 2 * HOUR_MILLIS, now - HOUR_MILLIS);
+        setStock(5);
+
+        assertThat(check(1L, 100L)).isEqualTo(4L);
+    }
+
+    @Test
+    void missingStockKeyIsNotSoldOut() {
+        openWindow();
+
+        assertThat(check(1L, 100L)).isEqualTo(5L);
+
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID)).isFalse();
+        assertThat(stringRedisTemplate.hasKey(RedisConstants.SECKILL_ORDER_STREAM_KEY)).isFalse();
+    }
+
+    @Test
+    void missingWindowIsNotChecked() {
+        setStock(1);
+
+        assertThat(check(1L, 100L)).isEqualTo(0L);
+    }
+
+    private Long check(long userId, long orderId) {
+        return stringRedisTemplate.execute(SCRIPT, Arrays.asList(
+                        RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID, RedisConstants.SECKILL_ORDER_KEY + VOUCHER_ID),
+                String.valueOf(VOUCHER_ID), String.valueOf(userId), String.valueOf(orderId));
+    }
+
+    private void openWindow() {
+        long now = System.currentTimeMillis();
+        setWindow(now - HOUR_MILLIS, now + HOUR_MILLIS);
+    }
+
+    private void setWindow(long begin, long end) {
+        Map<String, String> meta = new HashMap<>();
+        meta.put("begin", String.valueOf(begin));
+        meta.put("end", String.valueOf(end));
+        stringRedisTemplate.opsForHash().putAll(RedisConstants.SECKILL_META_KEY + VOUCHER_ID, meta);
+    }
+
+    private void setStock(int stock) {
+        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID, String.valueOf(stock));
+    }
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils.seckill;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.utils.EmbeddedRedisSupport;
+import com.hmdp.utils.constant.RedisConstants;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SeckillStockManagerTest extends EmbeddedRedisSupport {
+
+    @Test
+    void unshardedVoucherKeepsOriginalKeys() {
+        SeckillStockManager manager = manager(1);
+        manager.initStock(voucher(10L, 5));
+
+        assertThat(stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + 10)).isEqualTo("5");
+        assertThat(manager.shardsOf(10L)).isEqualTo(1);
+        assertThat(SeckillStockManager.orderKey(10L, 0, 1)).isEqualTo(RedisConstants.SECKILL_ORDER_KEY + 10);
+    }
+
+    @Test
+    void splitsStockAcrossShards() {
+        SeckillStockManager manager = manager(4);
+        manager.initStock(voucher(10L, 10));
+
+        assertThat(Arrays.asList(stock(10L, 0, 4), stock(10L, 1, 4), stock(10L, 2, 4), stock(10L, 3, 4)))
+                .containsExactly("3", "3", "2", "2");
+        assertThat(stringRedisTemplate.opsForHash().get(RedisConstants.SECKILL_META_KEY + 10, "shards"))
+                .isEqualTo("4");
+
+        manager.addStock(10L, 5);
+        assertThat(Arrays.asList(stock(10L, 0, 4), stock(10L, 1, 4), stock(10L, 2, 4), stock(10L, 3, 4)))
+                .containsExactly("5", "4", "3", "3");
+    }
+
+    @Test
+    void shardKeysShareOneSlot() {
+        for (int shard = 0; shard < 4; shard++) {
+            assertThat(SlotHash.getSlot(SeckillStockManager.stockKey(10L, shard, 4)))
+                    .isEqualTo(SlotHash.getSlot(SeckillStockManager.orderKey(10L, shard, 4)));
+        }
+        assertThat(SlotHash.getSlot(SeckillStockManager.stockKey(10L, 0, 4)))
+                .isNotEqualTo(SlotHash.getSlot(SeckillStockManager.stockKey(10L, 1, 4)));
+    }
+
+    @Test
+    void shardCountComesFromMetaNotFromCurrentConfig() {
+        manager(4).initStock(voucher(10L, 8));
+
+        assertThat(manager(2).shardsOf(10L)).isEqualTo(4);
+        assertThat(manager(2).shardsOf(11L)).isEqualTo(1);
+    }
+
+    @Test
+    void restoreWritesOnlyMissingKeys() {
+        SeckillStockManager manager = manager(2);
+        manager.initStock(voucher(10L, 4));
+        stringRedisTemplate.opsForValue().set(SeckillStockManager.stockKey(10L, 0, 2), "1");
+        stringRedisTemplate.delete(SeckillStockManager.stockKey(10L, 1, 2));
+
+        Map<Long, Integer> shards = manager.loadShards(Arrays.asList(10L, 11L));
+        assertThat(shards).containsEntry(10L, 2).containsEntry(11L, 2);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            manager.restore(connection, voucher(10L, 4), shards.get(10L));
+            return null;
+        });
+
+        assertThat(stock(10L, 0, 2)).isEqualTo("1");
+        assertThat(stock(10L, 1, 2)).isEqualTo("2");
+    }
+
+    @Test
+    void homeShardIsStableAndSpread() {
+        int[] counts = new int[4];
+        for (long userId = 1; userId <= 4000; userId++) {
+            int shard = SeckillStockManager.homeShard(userId, 4);
+            assertThat(SeckillStockManager.homeShard(userId, 4)).isEqualTo(shard);
+            counts[shard]++;
+        }
+        for (int count : counts) {
+            assertThat(count).isGreaterThan(800);
+        }
+    }
+
+    private static SeckillStockManager manager(int shards) {
+        SeckillProperties properties = new SeckillProperties();
+        properties.setStockShards(shards);
+        return new SeckillStockManager(stringRedisTemplate, properties);
+    }
+
+    private static String stock(Long voucherId, int shard, int shards) {
+        return stringRedisTemplate.opsForValue().get(SeckillStockManager.stockKey(voucherId, shard, shards));
+    }
+
+    private static SeckillVoucher voucher(Long voucherId, int stock) {
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(voucherId);
+        voucher.setStock(stock);
+        voucher.setBeginTime(LocalDateTime.now().minusHours(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        return voucher;
+    }
+}